@@ -0,0 +1,218 @@
+package com.example.reconciliation;
+
+import java.lang.System.Logger;
+import java.lang.System.Logger.Level;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+// Picks the engine per run from a pre-scan of both sides instead of per job by hand.
+//
+// A fixed-stride sample of each side estimates the size, the duplicate ratio and the
+// density: how many Side2 records fall inside one Side1 record's variance window. Window
+// scanning engines (hash grid, CAS claim) pay for every candidate they look at, the sweep
+// pays a sort and then constant work per record, so:
+//   small input                  -> sort-merge sweep, parallel setup costs more than it saves
+//   many duplicate amounts       -> sort-merge sweep, claim scans walk over claimed twins
+//   sparse (<= GRID_MAX_DENSITY) -> hash grid, O(1) bucket probes from all cores
+//   moderate (<= CAS_MAX_DENSITY)-> CAS claim (first come), binary search plus a short window scan
+//   dense                        -> sort-merge sweep
+// Batches with a partition key column run the chosen engine per partition, so there the
+// estimates are per partition too: a window and a duplicate only count Side2 records with
+// the same key, and the size test uses rows per partition (distinct keys seen in the
+// samples). The original
+// lambda engines are never chosen: the sweep dominates them on every data shape.
+// Each choice and its reason is logged at INFO.
+public class AdaptiveReconciler implements Reconciler {
+
+    static final int SAMPLE_SIZE = 4096;
+    static final int SMALL_INPUT = 20_000;
+    static final double MAX_DUPLICATE_RATIO = 0.2;
+    static final double GRID_MAX_DENSITY = 4;
+    static final double CAS_MAX_DENSITY = 64;
+
+    private static final Logger LOG = System.getLogger(AdaptiveReconciler.class.getName());
+
+    public enum Engine {
+        SORT_MERGE, HASH_GRID, CAS_CLAIM
+    }
+
+    // What the pre-scan saw and what it chose
+    public static final class Decision {
+        public final int size1;
+        public final int size2;
+        public final double density;
+        public final double duplicateRatio;
+        public final boolean partitioned;
+        // Distinct partition keys in the samples, 1 when not partitioned
+        public final int partitions;
+        public final Engine engine;
+        public final String reason;
+
+        Decision(int size1, int size2, double density, double duplicateRatio, boolean partitioned, int partitions, Engine engine,
+                 String reason) {
+            this.size1 = size1;
+            this.size2 = size2;
+            this.density = density;
+            this.duplicateRatio = duplicateRatio;
+            this.partitioned = partitioned;
+            this.partitions = partitions;
+            this.engine = engine;
+            this.reason = reason;
+        }
+
+        @Override
+        public String toString() {
+            return engine + (partitioned ? " per partition" : "") + " (" + reason + "; rows " + size1 + " x " + size2
+                    + (partitioned ? " in about " + partitions + " partitions" : "")
+                    + ", density " + String.format("%.2f", density) + ", duplicates " + String.format("%.1f%%", duplicateRatio * 100)
+                    + (partitioned ? " per partition" : "") + ")";
+        }
+    }
+
+    private final ReconcilerExecutor executor;
+    private final Reconciler sortMerge = new SortMergeReconciler();
+    private final Reconciler hashGrid;
+    private final Reconciler casClaim;
+
+    public AdaptiveReconciler() {
+        this(ReconcilerExecutor.commonPool());
+    }
+
+    public AdaptiveReconciler(ReconcilerExecutor executor) {
+        this.executor = executor;
+        this.hashGrid = new HashGridReconciler(executor);
+        this.casClaim = new CasClaimReconciler(executor, CasClaimReconciler.ClaimOrder.FIRST_COME);
+    }
+
+    @Override
+    public List<String> reconcile(List<Record> side1, List<Record> side2, double variance) {
+        return reconcile(RecordBatch.of(side1), RecordBatch.of(side2), variance);
+    }
+
+    @Override
+    public List<String> reconcile(RecordBatch side1, RecordBatch side2, double variance) {
+        MatchResult result = new MatchResult();
+        reconcile(side1, side2, variance, result);
+        return result.asStrings();
+    }
+
+    @Override
+    public void reconcile(RecordBatch side1, RecordBatch side2, double variance, MatchSink sink) {
+        Decision decision = decide(side1, side2, variance);
+        LOG.log(Level.INFO, "Reconciling with {0}", decision);
+        Reconciler engine = decision.engine == Engine.HASH_GRID ? hashGrid : decision.engine == Engine.CAS_CLAIM ? casClaim : sortMerge;
+        if (decision.partitioned) {
+            engine = new PartitionedReconciler(engine, executor);
+        }
+        engine.reconcile(side1, side2, variance, sink);
+    }
+
+    public Decision decide(RecordBatch side1, RecordBatch side2, double variance) {
+        int scale = Math.max(side1.scale, side2.scale);
+        RecordBatch s1 = side1.rescale(scale);
+        RecordBatch s2 = side2.rescale(scale);
+        long tolerance = s1.tolerance(variance);
+        boolean partitioned = s1.hasAttribute(RecordBatch.PARTITION_KEY) && s2.hasAttribute(RecordBatch.PARTITION_KEY);
+
+        long[] sample1 = sample(s1.amounts);
+        long[] sample2 = sample(s2.amounts);
+        // Unpartitioned sides are one partition with key 0
+        long[] keys1 = partitioned ? sample(s1.attribute(RecordBatch.PARTITION_KEY)) : new long[sample1.length];
+        long[] keys2 = partitioned ? sample(s2.attribute(RecordBatch.PARTITION_KEY)) : new long[sample2.length];
+        sortByKey(keys2, sample2);
+        int partitions = distinctKeys(keys1, keys2);
+
+        // Side2 records per Side1 window within its partition, scaled up from the sample
+        double density = 0;
+        if (sample1.length > 0 && sample2.length > 0) {
+            long inWindow = 0;
+            for (int k = 0; k < sample1.length; k++) {
+                inWindow += lowerBound(keys2, sample2, keys1[k], sample1[k] + tolerance + 1)
+                        - lowerBound(keys2, sample2, keys1[k], sample1[k] - tolerance);
+            }
+            density = (double) inWindow / sample1.length * s2.size / sample2.length;
+        }
+        // A record with one twin lands next to it in a sample of fraction f with probability f,
+        // so the share of repeats seen in the sample is divided by f
+        int duplicates = 0;
+        for (int k = 1; k < sample2.length; k++) {
+            duplicates += sample2[k] == sample2[k - 1] && keys2[k] == keys2[k - 1] ? 1 : 0;
+        }
+        double duplicateRatio = sample2.length > 0 ? Math.min(1, (double) duplicates / sample2.length * s2.size / sample2.length) : 0;
+
+        Engine engine;
+        String reason;
+        if (((long) s1.size + s2.size) / partitions < SMALL_INPUT) {
+            engine = Engine.SORT_MERGE;
+            reason = partitioned ? "small partitions" : "small input";
+        } else if (duplicateRatio > MAX_DUPLICATE_RATIO) {
+            engine = Engine.SORT_MERGE;
+            reason = "duplicate ratio above " + MAX_DUPLICATE_RATIO;
+        } else if (density <= GRID_MAX_DENSITY) {
+            engine = Engine.HASH_GRID;
+            reason = "sparse windows";
+        } else if (density <= CAS_MAX_DENSITY) {
+            engine = Engine.CAS_CLAIM;
+            reason = "moderate window density";
+        } else {
+            engine = Engine.SORT_MERGE;
+            reason = "dense windows";
+        }
+        return new Decision(s1.size, s2.size, density, duplicateRatio, partitioned, partitions, engine, reason);
+    }
+
+    // Sorts both sample columns by (key, amount); boxed, but only SAMPLE_SIZE rows
+    private static void sortByKey(long[] keys, long[] amounts) {
+        Integer[] order = new Integer[keys.length];
+        for (int k = 0; k < order.length; k++) {
+            order[k] = k;
+        }
+        Arrays.sort(order, Comparator.<Integer>comparingLong(k -> keys[k]).thenComparingLong(k -> amounts[k]));
+        long[] keyCopy = keys.clone();
+        long[] amountCopy = amounts.clone();
+        for (int k = 0; k < order.length; k++) {
+            keys[k] = keyCopy[order[k]];
+            amounts[k] = amountCopy[order[k]];
+        }
+    }
+
+    // First index of the (key, amount)-sorted sample at or after (key, amount)
+    private static int lowerBound(long[] keys, long[] amounts, long key, long amount) {
+        int lo = 0, hi = keys.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (keys[mid] < key || keys[mid] == key && amounts[mid] < amount) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private static int distinctKeys(long[] keys1, long[] keys2) {
+        long[] keys = Arrays.copyOf(keys1, keys1.length + keys2.length);
+        System.arraycopy(keys2, 0, keys, keys1.length, keys2.length);
+        Arrays.sort(keys);
+        int distinct = 0;
+        for (int k = 0; k < keys.length; k++) {
+            distinct += k == 0 || keys[k] != keys[k - 1] ? 1 : 0;
+        }
+        return Math.max(1, distinct);
+    }
+
+    // Every (n / SAMPLE_SIZE)-th value, so the estimate is deterministic for a given input;
+    // the same rows for every column of a side
+    private static long[] sample(long[] values) {
+        if (values.length <= SAMPLE_SIZE) {
+            return values.clone();
+        }
+        long[] sample = new long[SAMPLE_SIZE];
+        double stride = (double) values.length / SAMPLE_SIZE;
+        for (int k = 0; k < SAMPLE_SIZE; k++) {
+            sample[k] = values[(int) (k * stride)];
+        }
+        return sample;
+    }
+}
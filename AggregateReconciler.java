@@ -0,0 +1,257 @@
+package com.example.reconciliation;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+
+// 1:1 sort-merge sweep followed by an aggregate pass over what is left: a residual record
+// on one side is settled by a group of 2..maxGroupSize residual records on the other side
+// whose amounts sum to within variance of it (one bank line paying three ledger entries,
+// or three partial payments for one invoice).
+//
+// The group search is a depth-first subset-sum over the residual amounts in sorted order,
+// pruned with prefix sums: the k smallest amounts from a position on bound the sum from
+// below (and end the candidate window), the k largest bound it from above, and the last
+// member is found by binary search. Smaller groups are tried first. Each reconcile call
+// gets its own time budget, so under PartitionedReconciler one pathological partition key
+// stops searching and reports its residuals as unmatched instead of stalling the run.
+public class AggregateReconciler implements Reconciler {
+
+    public static final int DEFAULT_MAX_GROUP_SIZE = 3;
+    public static final Duration DEFAULT_BUDGET = Duration.ofMillis(250);
+
+    // Row status besides a partner row index
+    private static final int UNMATCHED = -1;
+    private static final int AGGREGATED = -2;
+
+    private final int maxGroupSize;
+    private final long budgetNanos;
+
+    public AggregateReconciler() {
+        this(DEFAULT_MAX_GROUP_SIZE, DEFAULT_BUDGET);
+    }
+
+    public AggregateReconciler(int maxGroupSize, Duration budget) {
+        if (maxGroupSize < 2) {
+            throw new IllegalArgumentException("maxGroupSize must be at least 2: " + maxGroupSize);
+        }
+        this.maxGroupSize = maxGroupSize;
+        this.budgetNanos = budget.toNanos();
+    }
+
+    @Override
+    public List<String> reconcile(List<Record> side1, List<Record> side2, double variance) {
+        return reconcile(RecordBatch.of(side1), RecordBatch.of(side2), variance);
+    }
+
+    @Override
+    public List<String> reconcile(RecordBatch side1, RecordBatch side2, double variance) {
+        MatchResult result = new MatchResult();
+        reconcile(side1, side2, variance, result);
+        return result.asStrings();
+    }
+
+    @Override
+    public void reconcile(RecordBatch side1, RecordBatch side2, double variance, MatchSink sink) {
+        int scale = Math.max(side1.scale, side2.scale);
+        RecordBatch s1 = side1.rescale(scale);
+        RecordBatch s2 = side2.rescale(scale);
+        long tolerance = s1.tolerance(variance);
+        long deadline = System.nanoTime() + budgetNanos;
+
+        long[] amounts1 = new long[s1.size];
+        long[] amounts2 = new long[s2.size];
+        int[] order1 = s1.sortedOrder(amounts1);
+        int[] order2 = s2.sortedOrder(amounts2);
+        int[] partner = SortMergeReconciler.sweep(amounts1, amounts2, tolerance);
+
+        // status[row] = partner row on the other side, UNMATCHED or AGGREGATED
+        int[] status1 = new int[s1.size];
+        int[] status2 = new int[s2.size];
+        Arrays.fill(status2, UNMATCHED);
+        for (int i = 0; i < s1.size; i++) {
+            int j = partner[i];
+            status1[order1[i]] = j >= 0 ? order2[j] : UNMATCHED;
+            if (j >= 0) {
+                status2[order2[j]] = order1[i];
+            }
+        }
+
+        // Residual rows, still in amount order
+        int[] residual1 = residual(order1, status1);
+        int[] residual2 = residual(order2, status2);
+        GroupSearch search1 = new GroupSearch(s1.amounts, residual1, maxGroupSize, deadline);
+        GroupSearch search2 = new GroupSearch(s2.amounts, residual2, maxGroupSize, deadline);
+
+        // Groups are reported after the 1:1 outcomes, so they are held until then
+        MatchResult groups = new MatchResult();
+        groups.begin(scale);
+        // One Side1 record settled by several Side2 records
+        for (int t = 0; t < residual1.length && !search2.expired; t++) {
+            int target = residual1[t];
+            int[] members = search2.find(s1.amounts[target] - tolerance, s1.amounts[target] + tolerance);
+            if (members != null) {
+                status1[target] = AGGREGATED;
+                search1.claim(t);
+                for (int m : members) {
+                    status2[residual2[m]] = AGGREGATED;
+                    search2.claim(m);
+                }
+                groups.matchedGroup(new int[] {s1.ids[target]}, new long[] {s1.amounts[target]},
+                        memberIds(s2, residual2, members), memberAmounts(s2, residual2, members));
+            }
+        }
+        // Several Side1 records settling one Side2 record
+        for (int t = 0; t < residual2.length && !search1.expired; t++) {
+            int target = residual2[t];
+            if (status2[target] == AGGREGATED) {
+                continue;
+            }
+            int[] members = search1.find(s2.amounts[target] - tolerance, s2.amounts[target] + tolerance);
+            if (members != null) {
+                status2[target] = AGGREGATED;
+                for (int m : members) {
+                    status1[residual1[m]] = AGGREGATED;
+                    search1.claim(m);
+                }
+                groups.matchedGroup(memberIds(s1, residual1, members), memberAmounts(s1, residual1, members),
+                        new int[] {s2.ids[target]}, new long[] {s2.amounts[target]});
+            }
+        }
+
+        sink.begin(scale);
+        for (int i = 0; i < s1.size; i++) {
+            int m = status1[i];
+            if (m >= 0) {
+                sink.matchedPair(s1.ids[i], s1.amounts[i], s2.ids[m], s2.amounts[m]);
+            } else if (m == UNMATCHED) {
+                sink.unmatchedSide1(s1.ids[i], s1.amounts[i]);
+            }
+        }
+        groups.replay(sink);
+        for (int row : residual2) {
+            if (status2[row] == UNMATCHED) {
+                sink.unmatchedSide2(s2.ids[row], s2.amounts[row]);
+            }
+        }
+    }
+
+    private static int[] residual(int[] order, int[] status) {
+        int count = 0;
+        for (int row : order) {
+            if (status[row] == UNMATCHED) {
+                count++;
+            }
+        }
+        int[] residual = new int[count];
+        int k = 0;
+        for (int row : order) {
+            if (status[row] == UNMATCHED) {
+                residual[k++] = row;
+            }
+        }
+        return residual;
+    }
+
+    private static int[] memberIds(RecordBatch batch, int[] residual, int[] members) {
+        int[] ids = new int[members.length];
+        for (int k = 0; k < members.length; k++) {
+            ids[k] = batch.ids[residual[members[k]]];
+        }
+        return ids;
+    }
+
+    private static long[] memberAmounts(RecordBatch batch, int[] residual, int[] members) {
+        long[] amounts = new long[members.length];
+        for (int k = 0; k < members.length; k++) {
+            amounts[k] = batch.amounts[residual[members[k]]];
+        }
+        return amounts;
+    }
+
+    // Bounded subset-sum search over one side's residual amounts (ascending). Members are
+    // returned as positions in the residual array; claimed positions are skipped through
+    // next-free pointers, so the search never rescans records that are already used.
+    static final class GroupSearch {
+        private final long[] amounts;
+        private final long[] prefix;
+        private final SkipPointers claims;
+        private final int[] chosen;
+        private final int maxGroupSize;
+        private final long deadline;
+        private int nodes;
+        boolean expired;
+
+        GroupSearch(long[] columnAmounts, int[] residual, int maxGroupSize, long deadline) {
+            int n = residual.length;
+            this.amounts = new long[n];
+            this.prefix = new long[n + 1];
+            for (int k = 0; k < n; k++) {
+                amounts[k] = columnAmounts[residual[k]];
+                prefix[k + 1] = prefix[k] + amounts[k];
+            }
+            this.claims = new SkipPointers(n);
+            this.chosen = new int[maxGroupSize];
+            this.maxGroupSize = maxGroupSize;
+            this.deadline = deadline;
+        }
+
+        void claim(int position) {
+            claims.take(position);
+        }
+
+        // First unclaimed position at or after position
+        private int free(int position) {
+            return claims.next(position);
+        }
+
+        // Positions of the smallest group whose sum lies in [lo, hi], or null
+        int[] find(long lo, long hi) {
+            for (int size = 2; size <= maxGroupSize && size <= amounts.length; size++) {
+                if (search(0, 0, size, 0, lo, hi)) {
+                    return Arrays.copyOf(chosen, size);
+                }
+                if (expired) {
+                    return null;
+                }
+            }
+            return null;
+        }
+
+        private boolean search(int depth, int from, int remaining, long partial, long lo, long hi) {
+            if ((++nodes & 1023) == 0 && System.nanoTime() - deadline > 0) {
+                expired = true;
+            }
+            if (expired) {
+                return false;
+            }
+            int n = amounts.length;
+            if (remaining == 1) {
+                int i = free(Math.max(from, CasClaimReconciler.lowerBound(amounts, lo - partial)));
+                if (i < n && amounts[i] <= hi - partial) {
+                    chosen[depth] = i;
+                    return true;
+                }
+                return false;
+            }
+            // Even the largest amounts cannot reach the window
+            if (partial + prefix[n] - prefix[n - remaining] < lo) {
+                return false;
+            }
+            for (int i = free(from); i <= n - remaining; i = free(i + 1)) {
+                // The next amounts are the smallest still available, and they only grow
+                if (partial + prefix[i + remaining] - prefix[i] > hi) {
+                    break;
+                }
+                chosen[depth] = i;
+                if (search(depth + 1, i + 1, remaining - 1, partial + amounts[i], lo, hi)) {
+                    return true;
+                }
+                if (expired) {
+                    return false;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -1,10 +1,24 @@
+import java.nio.file.Path;
+
+import javax.sql.DataSource;
+
 import org.springframework.batch.core.Job;
 import org.springframework.batch.core.Step;
 import org.springframework.batch.core.configuration.annotation.EnableBatchProcessing;
 import org.springframework.batch.core.configuration.annotation.JobBuilderFactory;
 import org.springframework.batch.core.configuration.annotation.StepBuilderFactory;
+import org.springframework.batch.core.configuration.annotation.StepScope;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import com.example.reconciliation.ConcurrentSideLoader;
+import com.example.reconciliation.ExternalSortReconciler;
+import com.example.reconciliation.JdbcMatchWriter;
+import com.example.reconciliation.ReconciliationTasklet;
+import com.example.reconciliation.RecordBatchRowCallbackHandler;
 
 @Configuration
 @EnableBatchProcessing
@@ -33,4 +47,74 @@ public class BatchConfig {
                 .tasklet(oracleReadTasklet)
                 .build();
     }
+
+    // Threads start on the first load; closed with the context
+    @Bean
+    public ConcurrentSideLoader sideLoader(
+            DataSource dataSource,
+            @Value("${reconciliation.scale:2}") int scale,
+            @Value("${reconciliation.load.ranges:16}") int ranges,
+            @Value("${reconciliation.load.threads:4}") int threads) {
+        return new ConcurrentSideLoader(dataSource, scale, ranges, threads);
+    }
+
+    // One writer per step execution, numbering its match_ids within the job instance
+    @Bean
+    @StepScope
+    public JdbcMatchWriter matchWriter(
+            JdbcTemplate jdbcTemplate,
+            PlatformTransactionManager transactionManager,
+            @Value("${reconciliation.result.table}") String resultTable,
+            @Value("${reconciliation.result.batch-size:1000}") int batchSize,
+            @Value("#{stepExecution.jobExecution.jobInstance.instanceId}") Long runId) {
+        return new JdbcMatchWriter(jdbcTemplate, transactionManager, resultTable, batchSize, runId);
+    }
+
+    @Bean
+    public ReconciliationTasklet reconciliationTasklet(
+            DataSource dataSource,
+            JdbcMatchWriter matchWriter,
+            ConcurrentSideLoader sideLoader,
+            @Value("${reconciliation.load.parallel:false}") boolean parallelLoad,
+            @Value("${reconciliation.side1.table}") String side1Table,
+            @Value("${reconciliation.side2.table}") String side2Table,
+            @Value("${reconciliation.id-column:id}") String idColumn,
+            @Value("${reconciliation.amount-column:amount}") String amountColumn,
+            @Value("${reconciliation.scale:2}") int scale,
+            @Value("${reconciliation.variance}") double variance,
+            @Value("${reconciliation.side2.snapshot:}") String snapshot,
+            @Value("${reconciliation.near-miss.count:0}") int nearMisses,
+            @Value("${reconciliation.near-miss.distance:0}") double nearMissDistance,
+            @Value("${reconciliation.spill.memory-bytes:0}") long spillMemory,
+            @Value("${reconciliation.spill.dir:}") String spillDir) {
+        Path snapshotPath = snapshot.isEmpty() ? null : Path.of(snapshot);
+        ReconciliationTasklet tasklet = parallelLoad
+                ? new ReconciliationTasklet(sideLoader,
+                        new ConcurrentSideLoader.Side(side1Table, idColumn, amountColumn),
+                        new ConcurrentSideLoader.Side(side2Table, idColumn, amountColumn),
+                        variance, matchWriter, snapshotPath)
+                : new ReconciliationTasklet(dataSource,
+                        RecordBatchRowCallbackHandler.selectSql(side1Table, idColumn, amountColumn, scale),
+                        RecordBatchRowCallbackHandler.selectSql(side2Table, idColumn, amountColumn, scale),
+                        scale, variance, matchWriter, snapshotPath);
+        // A spill budget streams both sides through sorted runs on disk instead of memory
+        if (spillMemory > 0) {
+            tasklet.spillToDisk(new ExternalSortReconciler(spillDir.isEmpty() ? null : Path.of(spillDir), spillMemory));
+        }
+        return tasklet.suggestNearMisses(nearMisses, nearMissDistance);
+    }
+
+    @Bean
+    public Job reconciliationJob(Step reconciliationStep) {
+        return jobBuilderFactory.get("reconciliationJob")
+                .start(reconciliationStep)
+                .build();
+    }
+
+    @Bean
+    public Step reconciliationStep(ReconciliationTasklet reconciliationTasklet) {
+        return stepBuilderFactory.get("reconciliationStep")
+                .tasklet(reconciliationTasklet)
+                .build();
+    }
 }
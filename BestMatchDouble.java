@@ -1,6 +1,8 @@
+import com.example.reconciliation.ExternalSortReconciler;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.*;
-import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.stream.Collectors;
 
 class Record {
     int id;
@@ -13,44 +15,24 @@ class Record {
 }
 
 public class ParallelReconciliation {
-    public static List<String> reconcile(List<Record> side1, List<Record> side2, double variance) {
-        NavigableMap<Double, Queue<Record>> side2Map = new TreeMap<>();
-
-        // Group side2 records by amount using ConcurrentLinkedQueue
-        for (Record s2 : side2) {
-            side2Map.computeIfAbsent(s2.amount, k -> new ConcurrentLinkedQueue<>()).offer(s2);
-        }
-
-        List<String> results = side1.parallelStream().map(s1 -> {
-            // Look for a match in the range [amount - variance, amount + variance]
-            Record bestMatch = null;
-
-            NavigableMap<Double, Queue<Record>> subMap = side2Map.subMap(s1.amount - variance, true, s1.amount + variance, true);
+    // Amounts are in cents; the sides are spilled to sorted runs on disk and merge-swept
+    // within the reconciler's memory budget, so no TreeMap of Side2 is built
+    static final int SCALE = 2;
+    private static final ExternalSortReconciler EXTERNAL_SORT = new ExternalSortReconciler();
 
-            for (Map.Entry<Double, Queue<Record>> entry : subMap.entrySet()) {
-                Queue<Record> candidates = entry.getValue();
-                Record match = candidates.poll();
-                if (match != null) {
-                    bestMatch = match;
-                    break; // First closest match found
-                }
+    public static List<String> reconcile(List<Record> side1, List<Record> side2, double variance) {
+        try (ExternalSortReconciler.SpillingSide spill1 = EXTERNAL_SORT.newSide(SCALE);
+             ExternalSortReconciler.SpillingSide spill2 = EXTERNAL_SORT.newSide(SCALE)) {
+            for (Record r : side1) {
+                spill1.add(r.id, r.amount);
             }
-
-            if (bestMatch != null) {
-                return "Side1: " + s1.id + " (" + s1.amount + ") <-> Side2: " + bestMatch.id + " (" + bestMatch.amount + ")";
-            } else {
-                return "Side1: " + s1.id + " (" + s1.amount + ") <-> No Match";
+            for (Record r : side2) {
+                spill2.add(r.id, r.amount);
             }
-        }).collect(Collectors.toList());
-
-        // Process unmatched Side2 records
-        List<String> unmatchedSide2 = side2Map.values().parallelStream()
-            .flatMap(Collection::stream)
-            .map(s2 -> "Side2: " + s2.id + " (" + s2.amount + ") <-> No Match")
-            .collect(Collectors.toList());
-
-        results.addAll(unmatchedSide2);
-        return results;
+            return EXTERNAL_SORT.reconcile(spill1, spill2, variance);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
     }
 
     public static void main(String[] args) {
@@ -0,0 +1,96 @@
+package com.example.reconciliation;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Window scan over a sorted amount column: the unclaimed amount closest to a probe within
+// tolerance. Claims live in a bitmap, one bit per slot, so a scan reads 64 claim flags per
+// word and the vector kernel turns them straight into a lane mask.
+//
+// The vector kernel (VectorCandidateScan) compares a full SIMD register of amounts per
+// step and is used when the jdk.incubator.vector module is present (run with
+// --add-modules jdk.incubator.vector), the platform has at least two long lanes, and
+// -Dreconciliation.simd=false is not set. Otherwise, and for the tail of a window, the
+// scalar loop below runs. Both return the same slot: the first one with the smallest
+// difference, which for sorted amounts breaks ties towards the lower amount.
+final class CandidateScan {
+
+    static final boolean VECTORIZED = Boolean.parseBoolean(System.getProperty("reconciliation.simd", "true"))
+            && ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()
+            && VectorCandidateScan.supported();
+
+    private CandidateScan() {
+    }
+
+    static AtomicLongArray bitmap(int slots) {
+        return new AtomicLongArray((slots + 63) >>> 6);
+    }
+
+    static boolean isClaimed(AtomicLongArray claimed, int slot) {
+        return (claimed.get(slot >>> 6) & (1L << slot)) != 0;
+    }
+
+    // Sets the slot's bit; false when another thread got there first
+    static boolean claim(AtomicLongArray claimed, int slot) {
+        int word = slot >>> 6;
+        long bit = 1L << slot;
+        long bits;
+        do {
+            bits = claimed.get(word);
+            if ((bits & bit) != 0) {
+                return false;
+            }
+        } while (!claimed.compareAndSet(word, bits, bits | bit));
+        return true;
+    }
+
+    // Slots of [0, slots) whose bit is not set, ascending; call once the probes are done
+    static int[] unclaimed(AtomicLongArray claimed, int slots) {
+        int[] free = new int[slots];
+        int n = 0;
+        for (int word = 0; word < claimed.length(); word++) {
+            long bits = ~claimed.get(word);
+            if (word == claimed.length() - 1 && (slots & 63) != 0) {
+                bits &= (1L << slots) - 1;
+            }
+            for (; bits != 0; bits &= bits - 1) {
+                free[n++] = (word << 6) + Long.numberOfTrailingZeros(bits);
+            }
+        }
+        return Arrays.copyOf(free, n);
+    }
+
+    // Claim bits of slots [from, from + count), count <= 64, bit k for slot from + k
+    static long claimBits(AtomicLongArray claimed, int from, int count) {
+        int word = from >>> 6;
+        int shift = from & 63;
+        long bits = claimed.get(word) >>> shift;
+        if (shift + count > 64 && word + 1 < claimed.length()) {
+            bits |= claimed.get(word + 1) << (64 - shift);
+        }
+        return bits;
+    }
+
+    // Slot of the closest unclaimed amount within tolerance of target, or -1
+    static int nearestUnclaimed(long[] amounts, AtomicLongArray claimed, long target, long tolerance) {
+        int from = CasClaimReconciler.lowerBound(amounts, target - tolerance);
+        return VECTORIZED
+                ? VectorCandidateScan.nearestUnclaimed(amounts, claimed, from, target, tolerance)
+                : nearestUnclaimed(amounts, claimed, from, -1, Long.MAX_VALUE, target, tolerance);
+    }
+
+    // Scalar scan from slot from on, continuing from an earlier best (-1 / MAX_VALUE for none)
+    static int nearestUnclaimed(long[] amounts, AtomicLongArray claimed, int from, int best, long minDiff, long target, long tolerance) {
+        for (int i = from; i < amounts.length; i++) {
+            long diff = Math.abs(target - amounts[i]);
+            if (amounts[i] > target && (diff > tolerance || diff >= minDiff)) {
+                break; // sorted: everything further right is only further away
+            }
+            if (diff <= tolerance && diff < minDiff && !isClaimed(claimed, i)) {
+                minDiff = diff;
+                best = i;
+            }
+        }
+        return best;
+    }
+}
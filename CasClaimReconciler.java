@@ -0,0 +1,227 @@
+package com.example.reconciliation;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Lock-free CAS claim.
+// Side2 is sorted once into a primitive amount array and every slot has a claim bit.
+// A thread only owns a candidate after winning compareAndSet on its bit; when it loses
+// it rescans the window for the next best unclaimed candidate.
+//
+// The claim order decides which Side1 record gets a contested candidate:
+//   INPUT_ORDER - the pairs (and so the count) of the sequential ReconciliationFixed.reconcile:
+//                 Side1 records in input order each take the nearest unclaimed Side2
+//                 record, ties to the one first in Side2 input order. Side1 is cut into
+//                 clusters that share no candidate (sorted Side1 amounts with no Side2
+//                 amount inside both neighbours' windows); a record's choice only depends
+//                 on earlier claims in its own cluster, so clusters run in parallel and
+//                 each is replayed sequentially in input order. One chain of overlapping
+//                 windows across the whole domain runs on a single thread.
+//   FIRST_COME  - threads claim as they get there: a maximal matching (no Side1 record
+//                 reports "No Match" while an unclaimed candidate within variance is
+//                 left), fully parallel, but which record wins a contested candidate, and
+//                 so the count, depends on thread timing.
+public class CasClaimReconciler implements Reconciler {
+
+    public enum ClaimOrder {
+        INPUT_ORDER, FIRST_COME
+    }
+
+    private final ReconcilerExecutor executor;
+    private final ReconciliationMetrics metrics;
+    private final ClaimOrder claimOrder;
+
+    public CasClaimReconciler() {
+        this(ReconcilerExecutor.commonPool());
+    }
+
+    public CasClaimReconciler(ReconcilerExecutor executor) {
+        this(executor, ClaimOrder.INPUT_ORDER);
+    }
+
+    public CasClaimReconciler(ReconcilerExecutor executor, ClaimOrder claimOrder) {
+        this(executor, ReconciliationMetrics.global("casClaim"), claimOrder);
+    }
+
+    CasClaimReconciler(ReconciliationMetrics metrics) {
+        this(ReconcilerExecutor.commonPool(), metrics, ClaimOrder.INPUT_ORDER);
+    }
+
+    CasClaimReconciler(ReconcilerExecutor executor, ReconciliationMetrics metrics, ClaimOrder claimOrder) {
+        this.executor = executor;
+        this.metrics = metrics;
+        this.claimOrder = claimOrder;
+    }
+
+    @Override
+    public List<String> reconcile(List<Record> side1, List<Record> side2, double variance) {
+        return reconcile(RecordBatch.of(side1), RecordBatch.of(side2), variance);
+    }
+
+    @Override
+    public List<String> reconcile(RecordBatch side1, RecordBatch side2, double variance) {
+        MatchResult result = new MatchResult();
+        reconcile(side1, side2, variance, result);
+        return result.asStrings();
+    }
+
+    @Override
+    public void reconcile(RecordBatch side1, RecordBatch side2, double variance, MatchSink sink) {
+        boolean measured = metrics.enabled();
+        long t = System.nanoTime();
+        int scale = Math.max(side1.scale, side2.scale);
+        RecordBatch s1 = side1.rescale(scale);
+        RecordBatch s2 = side2.rescale(scale);
+        long tolerance = s1.tolerance(variance);
+
+        long[] amounts = new long[s2.size];
+        int[] order = s2.sortedOrder(amounts);
+        AtomicLongArray claimed = CandidateScan.bitmap(s2.size);
+        if (measured) {
+            t = metrics.phase(ReconciliationMetrics.Phase.INDEX_BUILD, t);
+        }
+
+        int[] matchOf = claimOrder == ClaimOrder.INPUT_ORDER
+                ? claimInInputOrder(s1, amounts, order, new FreeSlots(claimed, s2.size), tolerance, measured)
+                : claimFirstCome(s1, amounts, order, claimed, tolerance, measured);
+        if (measured) {
+            t = metrics.phase(ReconciliationMetrics.Phase.MATCHING, t);
+        }
+
+        int[] unmatched2 = CandidateScan.unclaimed(claimed, s2.size);
+        if (measured) {
+            t = metrics.phase(ReconciliationMetrics.Phase.UNMATCHED, t);
+        }
+
+        sink.begin(scale);
+        long pairs = 0;
+        for (int i = 0; i < s1.size; i++) {
+            int m = matchOf[i];
+            if (m >= 0) {
+                sink.matchedPair(s1.ids[i], s1.amounts[i], s2.ids[m], s2.amounts[m]);
+                pairs++;
+            } else {
+                sink.unmatchedSide1(s1.ids[i], s1.amounts[i]);
+            }
+        }
+        for (int k : unmatched2) {
+            sink.unmatchedSide2(s2.ids[order[k]], s2.amounts[order[k]]);
+        }
+        if (measured) {
+            metrics.phase(ReconciliationMetrics.Phase.EMISSION, t);
+            metrics.outcomes(pairs, s1.size - pairs, s2.size - pairs);
+        }
+    }
+
+    // matchOf[side1 row] = side2 row, or -1; every task writes only its own slot
+    private int[] claimFirstCome(RecordBatch s1, long[] amounts, int[] order, AtomicLongArray claimed, long tolerance, boolean measured) {
+        int[] matchOf = new int[s1.size];
+        executor.forEach(s1.size, i -> {
+            long target = s1.amounts[i];
+            int retries = 0;
+            int best;
+            matchOf[i] = -1;
+            while ((best = CandidateScan.nearestUnclaimed(amounts, claimed, target, tolerance)) >= 0) {
+                if (CandidateScan.claim(claimed, best)) {
+                    matchOf[i] = order[best];
+                    break;
+                }
+                // Lost the claim to another thread, retry on the next best candidate
+                retries++;
+            }
+            if (measured) {
+                metrics.candidateWindow(lowerBound(amounts, target + tolerance + 1) - lowerBound(amounts, target - tolerance));
+                metrics.claimRetries(retries);
+            }
+        });
+        return matchOf;
+    }
+
+    // The same result as claiming sequentially in Side1 input order; see ClaimOrder.INPUT_ORDER
+    private int[] claimInInputOrder(RecordBatch s1, long[] amounts, int[] order, FreeSlots free, long tolerance, boolean measured) {
+        // Equal amounts in Side2 input order, so the first free slot of a run is the record
+        // ReconciliationFixed would pick among them
+        for (int run = 0; run < amounts.length; ) {
+            int end = run + 1;
+            while (end < amounts.length && amounts[end] == amounts[run]) {
+                end++;
+            }
+            Arrays.sort(order, run, end);
+            run = end;
+        }
+
+        long[] amounts1 = new long[s1.size];
+        int[] rows1 = s1.sortedOrder(amounts1);
+        // Cluster c covers rows1[start[c] .. start[c + 1]); a cut between two neighbours
+        // means no Side2 amount lies within variance of both
+        int[] start = new int[s1.size + 1];
+        int clusters = 0;
+        for (int k = 1; k < s1.size; k++) {
+            if (lowerBound(amounts, amounts1[k] - tolerance) >= lowerBound(amounts, amounts1[k - 1] + tolerance + 1)) {
+                start[++clusters] = k;
+            }
+        }
+        if (s1.size > 0) {
+            start[++clusters] = s1.size;
+        }
+
+        int[] matchOf = new int[s1.size];
+        int[] starts = start;
+        executor.forEach(clusters, c -> {
+            // Rows of the cluster back in input order; clusters sort disjoint slices
+            Arrays.sort(rows1, starts[c], starts[c + 1]);
+            for (int k = starts[c]; k < starts[c + 1]; k++) {
+                int i = rows1[k];
+                long target = s1.amounts[i];
+                int best = nearestFirst(free, amounts, order, target, tolerance);
+                matchOf[i] = best >= 0 && free.claim(best) ? order[best] : -1;
+                if (measured) {
+                    metrics.candidateWindow(lowerBound(amounts, target + tolerance + 1) - lowerBound(amounts, target - tolerance));
+                    metrics.claimRetries(0);
+                }
+            }
+        });
+        return matchOf;
+    }
+
+    // Free slot closest to target within tolerance, or -1; among equally close slots the
+    // one whose record comes first in Side2 input order
+    private static int nearestFirst(FreeSlots free, long[] amounts, int[] order, long target, long tolerance) {
+        int from = lowerBound(amounts, target);
+        int above = free.nextFree(from);
+        int below = free.previousFree(from - 1);
+        if (below >= 0) {
+            // First free slot of the run of equal amounts below is the earliest record
+            below = free.nextFree(lowerBound(amounts, amounts[below]));
+        }
+        long aboveDiff = above < amounts.length ? amounts[above] - target : Long.MAX_VALUE;
+        long belowDiff = below >= 0 ? target - amounts[below] : Long.MAX_VALUE;
+        if (Math.min(aboveDiff, belowDiff) > tolerance) {
+            return -1;
+        }
+        if (belowDiff != aboveDiff) {
+            return belowDiff < aboveDiff ? below : above;
+        }
+        return order[below] < order[above] ? below : above;
+    }
+
+    // First index whose amount is >= key
+    static int lowerBound(long[] amounts, long key) {
+        return lowerBound(amounts, 0, amounts.length, key);
+    }
+
+    // First index of the sorted range [from, to) with an amount >= key, to when there is none
+    static int lowerBound(long[] amounts, int from, int to, long key) {
+        int lo = from, hi = to;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (amounts[mid] < key) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+}
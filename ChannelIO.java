@@ -0,0 +1,47 @@
+package com.example.reconciliation;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+// Sequential FileChannel I/O through one reusable direct buffer, shared by the binary file
+// formats (datasets, open-items indexes, match index snapshots, sorted runs). All of them
+// are little endian.
+//
+// A write buffer is filled with put calls and handed to drain when it runs low; a read
+// buffer is topped up with fill before get calls need more bytes than it holds.
+final class ChannelIO {
+
+    private ChannelIO() {
+    }
+
+    static ByteBuffer buffer(int bytes) {
+        return ByteBuffer.allocateDirect(bytes).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    // Writes out everything put since the last drain and clears the buffer for more puts
+    static void drain(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    // Keeps the unread bytes and reads until at least atLeast are available, leaving the
+    // buffer ready for gets. A freshly cleared buffer starts empty. what names the file
+    // in the error when it ends first.
+    static void fill(FileChannel channel, ByteBuffer buffer, int atLeast, String what) throws IOException {
+        if (buffer.position() != 0 || buffer.limit() != buffer.capacity()) {
+            buffer.compact();
+        }
+        while (buffer.position() < atLeast) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException(what + " is truncated");
+            }
+        }
+        buffer.flip();
+    }
+}
@@ -0,0 +1,160 @@
+package com.example.reconciliation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+// Loads reconciliation sides with parallel I/O. Each side's id span is read first
+// (SELECT MIN(id), MAX(id)), cut into rangesPerSide equal key ranges, and every range
+// runs as its own query on the pool, decoded by a RecordBatchRowCallbackHandler straight
+// into primitive columns. The ranges are concatenated in key order once all have arrived.
+//
+// Every range runs in its own transaction, so all queries read the tables as of one
+// Oracle system change number (flashback query, SELECT ... FROM table AS OF SCN n):
+// rows committed while the ranges load are seen by none of them. Pass the same SCN to
+// both sides for a consistent pair; this needs FLASHBACK on the tables and EXECUTE on
+// DBMS_FLASHBACK. load returns at once, so both sides fetch concurrently when both are
+// started before either is joined:
+//
+//   long scn = loader.currentScn();
+//   CompletableFuture<RecordBatch> side1 = loader.load(new Side("side1_items", "id", "amount"), scn);
+//   CompletableFuture<RecordBatch> side2 = loader.load(new Side("side2_items", "id", "amount"), scn);
+//   reconciler.reconcile(side1.join(), side2.join(), variance, sink);
+//
+// Every running range holds a connection: size the pool no larger than the DataSource's.
+// Ranges are equal in key width, not in rows, so use more ranges than threads when ids
+// are clustered.
+public class ConcurrentSideLoader implements AutoCloseable {
+
+    static final int FETCH_SIZE = 10_000;
+
+    // Table and columns of one side; id must be an integer key the ranges can split
+    public static final class Side {
+        final String table;
+        final String idColumn;
+        final String amountColumn;
+
+        public Side(String table, String idColumn, String amountColumn) {
+            this.table = table;
+            this.idColumn = idColumn;
+            this.amountColumn = amountColumn;
+        }
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int scale;
+    private final int rangesPerSide;
+    private final ExecutorService pool;
+    private final boolean ownsPool;
+
+    public ConcurrentSideLoader(DataSource dataSource, int scale, int rangesPerSide, int threads) {
+        this(dataSource, scale, rangesPerSide, newPool(threads), true);
+    }
+
+    public ConcurrentSideLoader(DataSource dataSource, int scale, int rangesPerSide, ExecutorService pool) {
+        this(dataSource, scale, rangesPerSide, pool, false);
+    }
+
+    private static ExecutorService newPool(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be positive: " + threads);
+        }
+        AtomicInteger count = new AtomicInteger();
+        return Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "side-loader-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private ConcurrentSideLoader(DataSource dataSource, int scale, int rangesPerSide, ExecutorService pool, boolean ownsPool) {
+        FixedPoint.checkScale(scale);
+        if (rangesPerSide < 1) {
+            throw new IllegalArgumentException("rangesPerSide must be positive: " + rangesPerSide);
+        }
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.jdbcTemplate.setFetchSize(FETCH_SIZE);
+        this.scale = scale;
+        this.rangesPerSide = rangesPerSide;
+        this.pool = pool;
+        this.ownsPool = ownsPool;
+    }
+
+    DataSource dataSource() {
+        return jdbcTemplate.getDataSource();
+    }
+
+    int scale() {
+        return scale;
+    }
+
+    // The database's current system change number, the read point for load and selectSql
+    public long currentScn() {
+        return jdbcTemplate.queryForObject("SELECT DBMS_FLASHBACK.GET_SYSTEM_CHANGE_NUMBER FROM DUAL", Long.class);
+    }
+
+    // (id, minor amount) rows of the side as of scn, for callers streaming it on one cursor
+    public String selectSql(Side side, long scn) {
+        return RecordBatchRowCallbackHandler.selectSql(asOf(side, scn), side.idColumn, side.amountColumn, scale);
+    }
+
+    public CompletableFuture<RecordBatch> load(Side side) {
+        return load(side, currentScn());
+    }
+
+    public CompletableFuture<RecordBatch> load(Side side, long scn) {
+        return CompletableFuture.supplyAsync(() -> idSpan(side, scn), pool).thenCompose(span -> {
+            if (span == null) {
+                return CompletableFuture.completedFuture(new RecordBatch(new int[0], new long[0], scale));
+            }
+            String sql = selectSql(side, scn) + " WHERE " + side.idColumn + " >= ? AND " + side.idColumn + " < ?";
+            long width = Math.max(1, (span[1] - span[0] + rangesPerSide) / rangesPerSide);
+            List<CompletableFuture<RecordBatch>> ranges = new ArrayList<>();
+            for (long from = span[0]; from <= span[1]; from += width) {
+                long lo = from;
+                long hi = Math.min(span[1] + 1, from + width);
+                ranges.add(CompletableFuture.supplyAsync(() -> loadRange(sql, lo, hi), pool));
+            }
+            return CompletableFuture.allOf(ranges.toArray(new CompletableFuture<?>[0])).thenApply(done -> {
+                List<RecordBatch> parts = new ArrayList<>(ranges.size());
+                for (CompletableFuture<RecordBatch> range : ranges) {
+                    parts.add(range.join());
+                }
+                return RecordBatch.concat(parts, scale);
+            });
+        });
+    }
+
+    private static String asOf(Side side, long scn) {
+        return side.table + " AS OF SCN " + scn;
+    }
+
+    // {min, max} of the id column, null for an empty table
+    private long[] idSpan(Side side, long scn) {
+        return jdbcTemplate.query("SELECT MIN(" + side.idColumn + "), MAX(" + side.idColumn + ") FROM " + asOf(side, scn), rs -> {
+            rs.next();
+            long min = rs.getLong(1);
+            return rs.wasNull() ? null : new long[] {min, rs.getLong(2)};
+        });
+    }
+
+    private RecordBatch loadRange(String sql, long from, long to) {
+        RecordBatchRowCallbackHandler handler = new RecordBatchRowCallbackHandler(scale);
+        jdbcTemplate.query(sql, handler, from, to);
+        return handler.toBatch();
+    }
+
+    @Override
+    public void close() {
+        if (ownsPool) {
+            pool.shutdown();
+        }
+    }
+}
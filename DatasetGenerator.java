@@ -0,0 +1,322 @@
+package com.example.reconciliation;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.SplittableRandom;
+
+// Seeded generator for benchmark inputs that look like our feeds rather than uniform noise:
+//  - amounts drawn UNIFORM, LOG_NORMAL (long tail) or ZIPF over a pool of distinct amounts
+//    where a share of the pool sits on round values, so a few amounts repeat very often,
+//  - a duplicate-cluster rate of rows that repeat an amount already drawn for the side,
+//  - a match rate of Side2 rows that are a Side1 row plus noise inside variance and a
+//    near-miss rate of rows just outside it; the remaining Side2 rows are independent.
+// The same settings and seed always give the same dataset, and a Dataset can be saved to
+// a binary file so exactly the same input can be replayed across engines and commits.
+public final class DatasetGenerator {
+
+    public enum Distribution {
+        UNIFORM, LOG_NORMAL, ZIPF
+    }
+
+    private long seed = 42;
+    private int records = 100_000;
+    private int scale = RecordBatch.DEFAULT_SCALE;
+    private double maxAmount = 1000;
+    private Distribution distribution = Distribution.UNIFORM;
+    private double zipfExponent = 1.1;
+    private int distinctAmounts = 10_000;
+    private double roundAmountShare = 0.3;
+    private double duplicateClusterRate;
+    private double variance = 1.5;
+    private double matchRate = 0.8;
+    private double nearMissRate = 0.05;
+    private int partitionKeys;
+
+    public DatasetGenerator seed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    public DatasetGenerator records(int records) {
+        if (records < 0) {
+            throw new IllegalArgumentException("records must not be negative: " + records);
+        }
+        this.records = records;
+        return this;
+    }
+
+    public DatasetGenerator scale(int scale) {
+        FixedPoint.checkScale(scale);
+        this.scale = scale;
+        return this;
+    }
+
+    public DatasetGenerator maxAmount(double maxAmount) {
+        this.maxAmount = maxAmount;
+        return this;
+    }
+
+    public DatasetGenerator distribution(Distribution distribution) {
+        this.distribution = distribution;
+        return this;
+    }
+
+    // Exponent s of the Zipf law: the k-th most frequent amount has weight 1 / k^s
+    public DatasetGenerator zipf(double exponent, int distinctAmounts, double roundAmountShare) {
+        if (distinctAmounts < 1) {
+            throw new IllegalArgumentException("distinctAmounts must be positive: " + distinctAmounts);
+        }
+        this.distribution = Distribution.ZIPF;
+        this.zipfExponent = exponent;
+        this.distinctAmounts = distinctAmounts;
+        this.roundAmountShare = checkRate("roundAmountShare", roundAmountShare);
+        return this;
+    }
+
+    public DatasetGenerator duplicateClusterRate(double rate) {
+        this.duplicateClusterRate = checkRate("duplicateClusterRate", rate);
+        return this;
+    }
+
+    public DatasetGenerator variance(double variance) {
+        this.variance = variance;
+        return this;
+    }
+
+    public DatasetGenerator matchRate(double matchRate, double nearMissRate) {
+        checkRate("matchRate", matchRate);
+        checkRate("nearMissRate", nearMissRate);
+        if (matchRate + nearMissRate > 1) {
+            throw new IllegalArgumentException("matchRate + nearMissRate must not exceed 1: " + (matchRate + nearMissRate));
+        }
+        this.matchRate = matchRate;
+        this.nearMissRate = nearMissRate;
+        return this;
+    }
+
+    // Number of partition keys spread over the rows; 0 generates no key column
+    public DatasetGenerator partitionKeys(int partitionKeys) {
+        this.partitionKeys = partitionKeys;
+        return this;
+    }
+
+    private static double checkRate(String name, double rate) {
+        if (rate < 0 || rate > 1) {
+            throw new IllegalArgumentException(name + " must be between 0 and 1: " + rate);
+        }
+        return rate;
+    }
+
+    public Dataset generate() {
+        SplittableRandom random = new SplittableRandom(seed);
+        long max = FixedPoint.toMinor(maxAmount, scale);
+        long tolerance = FixedPoint.toleranceToMinor(variance, scale);
+        AmountSource source = new AmountSource(random, max);
+
+        int[] ids1 = new int[records];
+        long[] amounts1 = new long[records];
+        long[] keys1 = new long[records];
+        for (int i = 0; i < records; i++) {
+            ids1[i] = i + 1;
+            amounts1[i] = i > 0 && random.nextDouble() < duplicateClusterRate ? amounts1[random.nextInt(i)] : source.next();
+            keys1[i] = partitionKeys > 0 ? 1 + random.nextInt(partitionKeys) : 0;
+        }
+
+        int[] ids2 = new int[records];
+        long[] amounts2 = new long[records];
+        long[] keys2 = new long[records];
+        for (int i = 0; i < records; i++) {
+            ids2[i] = records + i + 1;
+            double draw = random.nextDouble();
+            if (draw < matchRate) {
+                amounts2[i] = amounts1[i] + (tolerance > 0 ? random.nextLong(-tolerance, tolerance + 1) : 0);
+                keys2[i] = keys1[i];
+            } else if (draw < matchRate + nearMissRate) {
+                long miss = tolerance + 1 + (tolerance > 0 ? random.nextLong(tolerance) : 0);
+                amounts2[i] = amounts1[i] + (random.nextBoolean() ? miss : -miss);
+                keys2[i] = keys1[i];
+            } else {
+                amounts2[i] = i > 0 && random.nextDouble() < duplicateClusterRate ? amounts2[random.nextInt(i)] : source.next();
+                keys2[i] = partitionKeys > 0 ? 1 + random.nextInt(partitionKeys) : 0;
+            }
+        }
+        // Side2 arrives in its own order, not aligned with its Side1 counterparts
+        for (int i = records - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int id = ids2[i];
+            ids2[i] = ids2[j];
+            ids2[j] = id;
+            long amount = amounts2[i];
+            amounts2[i] = amounts2[j];
+            amounts2[j] = amount;
+            long key = keys2[i];
+            keys2[i] = keys2[j];
+            keys2[j] = key;
+        }
+
+        RecordBatch side1 = new RecordBatch(ids1, amounts1, scale);
+        RecordBatch side2 = new RecordBatch(ids2, amounts2, scale);
+        if (partitionKeys > 0) {
+            side1 = side1.withAttribute(RecordBatch.PARTITION_KEY, keys1);
+            side2 = side2.withAttribute(RecordBatch.PARTITION_KEY, keys2);
+        }
+        return new Dataset(seed, variance, side1, side2);
+    }
+
+    // Draws amounts in minor units from the configured distribution
+    private final class AmountSource {
+        private final SplittableRandom random;
+        private final long max;
+        private final long[] pool;
+        private final double[] cumulative;
+
+        AmountSource(SplittableRandom random, long max) {
+            this.random = random;
+            this.max = Math.max(1, max);
+            if (distribution == Distribution.ZIPF) {
+                pool = new long[distinctAmounts];
+                cumulative = new double[distinctAmounts];
+                long unit = FixedPoint.powerOfTen(scale);
+                double total = 0;
+                for (int k = 0; k < distinctAmounts; k++) {
+                    if (random.nextDouble() < roundAmountShare) {
+                        // Whole tens, hundreds or thousands
+                        long step = unit * (long) Math.pow(10, 1 + random.nextInt(3));
+                        pool[k] = Math.max(step, random.nextLong(this.max + 1) / step * step);
+                    } else {
+                        pool[k] = random.nextLong(this.max + 1);
+                    }
+                    total += 1 / Math.pow(k + 1, zipfExponent);
+                    cumulative[k] = total;
+                }
+            } else {
+                pool = null;
+                cumulative = null;
+            }
+        }
+
+        long next() {
+            switch (distribution) {
+                case LOG_NORMAL:
+                    // Median around 5% of maxAmount, the tail runs well past it
+                    double gaussian = Math.sqrt(-2 * Math.log(1 - random.nextDouble())) * Math.cos(2 * Math.PI * random.nextDouble());
+                    return Math.round(max * 0.05 * Math.exp(1.5 * gaussian));
+                case ZIPF:
+                    double u = random.nextDouble() * cumulative[cumulative.length - 1];
+                    int lo = 0, hi = cumulative.length - 1;
+                    while (lo < hi) {
+                        int mid = (lo + hi) >>> 1;
+                        if (cumulative[mid] < u) {
+                            lo = mid + 1;
+                        } else {
+                            hi = mid;
+                        }
+                    }
+                    return pool[lo];
+                default:
+                    return random.nextLong(max + 1);
+            }
+        }
+    }
+
+    // Generated (or loaded) input for one benchmark run.
+    //
+    // File layout (little endian): int magic, int scale, long seed, double variance, int rows1,
+    // int rows2, byte hasPartitionKeys, then per side the id column (4 bytes/row), the amount
+    // column (8 bytes/row) and, when present, the partition key column (8 bytes/row).
+    static final class Dataset {
+        private static final int MAGIC = 0x52445331;
+        private static final int HEADER_BYTES = 33;
+        private static final int CHUNK_BYTES = 1 << 20;
+
+        final long seed;
+        final double variance;
+        final RecordBatch side1;
+        final RecordBatch side2;
+
+        Dataset(long seed, double variance, RecordBatch side1, RecordBatch side2) {
+            if (side1.scale != side2.scale) {
+                throw new IllegalArgumentException("Both sides must use the same scale: " + side1.scale + " vs " + side2.scale);
+            }
+            this.seed = seed;
+            this.variance = variance;
+            this.side1 = side1;
+            this.side2 = side2;
+        }
+
+        public void save(Path file) throws IOException {
+            boolean keyed = side1.hasAttribute(RecordBatch.PARTITION_KEY) && side2.hasAttribute(RecordBatch.PARTITION_KEY);
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                ByteBuffer buffer = ChannelIO.buffer(CHUNK_BYTES);
+                buffer.putInt(MAGIC).putInt(side1.scale).putLong(seed).putDouble(variance)
+                        .putInt(side1.size).putInt(side2.size).put((byte) (keyed ? 1 : 0));
+                for (RecordBatch side : new RecordBatch[] {side1, side2}) {
+                    for (int i = 0; i < side.size; i++) {
+                        if (buffer.remaining() < 4) {
+                            ChannelIO.drain(channel, buffer);
+                        }
+                        buffer.putInt(side.ids[i]);
+                    }
+                    writeLongs(channel, buffer, side.amounts);
+                    if (keyed) {
+                        writeLongs(channel, buffer, side.attribute(RecordBatch.PARTITION_KEY));
+                    }
+                }
+                ChannelIO.drain(channel, buffer);
+            }
+        }
+
+        public static Dataset load(Path file) throws IOException {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                ByteBuffer buffer = ChannelIO.buffer(CHUNK_BYTES);
+                ChannelIO.fill(channel, buffer, HEADER_BYTES, "Dataset file");
+                if (buffer.getInt() != MAGIC) {
+                    throw new IOException("Not a dataset file: " + file);
+                }
+                int scale = buffer.getInt();
+                long seed = buffer.getLong();
+                double variance = buffer.getDouble();
+                int rows1 = buffer.getInt();
+                int rows2 = buffer.getInt();
+                boolean keyed = buffer.get() != 0;
+                RecordBatch[] sides = new RecordBatch[2];
+                for (int s = 0; s < 2; s++) {
+                    int rows = s == 0 ? rows1 : rows2;
+                    int[] ids = new int[rows];
+                    for (int i = 0; i < rows; i++) {
+                        if (buffer.remaining() < 4) {
+                            ChannelIO.fill(channel, buffer, 4, "Dataset file");
+                        }
+                        ids[i] = buffer.getInt();
+                    }
+                    RecordBatch side = new RecordBatch(ids, readLongs(channel, buffer, rows), scale);
+                    sides[s] = keyed ? side.withAttribute(RecordBatch.PARTITION_KEY, readLongs(channel, buffer, rows)) : side;
+                }
+                return new Dataset(seed, variance, sides[0], sides[1]);
+            }
+        }
+
+        private static void writeLongs(FileChannel channel, ByteBuffer buffer, long[] values) throws IOException {
+            for (long value : values) {
+                if (buffer.remaining() < 8) {
+                    ChannelIO.drain(channel, buffer);
+                }
+                buffer.putLong(value);
+            }
+        }
+
+        private static long[] readLongs(FileChannel channel, ByteBuffer buffer, int rows) throws IOException {
+            long[] values = new long[rows];
+            for (int i = 0; i < rows; i++) {
+                if (buffer.remaining() < 8) {
+                    ChannelIO.fill(channel, buffer, 8, "Dataset file");
+                }
+                values[i] = buffer.getLong();
+            }
+            return values;
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package com.example.reconciliation;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+// Sort-merge sweep that uses all cores and still pairs exactly like a sequential run,
+// whatever the pool size, thread timing or input row order, so audit reruns and
+// regression diffs are reproducible.
+//
+// Both sides are sorted by amount, ties by id, which fixes the sequential result. The
+// amount domain is cut into ranges of about equal row count, from a histogram of a
+// sample of both sides; each range is bucketed, sorted and swept in parallel. The only
+// state a sweep carries across a range boundary is the Side2 cursor, so every range
+// after the first is swept speculatively from the cursor it would have if nothing
+// before it had consumed any candidate. A final pass walks the boundaries in order and
+// re-sweeps each range from the true cursor until that agrees with the speculative one;
+// from there on both runs are identical. The re-swept band is normally a handful of
+// rows per boundary; only a chain of overlapping windows running through a whole range
+// makes it longer.
+public class DeterministicParallelReconciler implements Reconciler {
+
+    static final int RANGES_PER_THREAD = 4;
+    static final int SAMPLES_PER_RANGE = 64;
+
+    private final ReconcilerExecutor executor;
+    private final ReconciliationMetrics metrics;
+
+    public DeterministicParallelReconciler() {
+        this(ReconcilerExecutor.commonPool());
+    }
+
+    public DeterministicParallelReconciler(ForkJoinPool pool) {
+        this(ReconcilerExecutor.forkJoin(pool));
+    }
+
+    public DeterministicParallelReconciler(ReconcilerExecutor executor) {
+        this(executor, ReconciliationMetrics.global("deterministic"));
+    }
+
+    DeterministicParallelReconciler(ReconcilerExecutor executor, ReconciliationMetrics metrics) {
+        this.executor = executor;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public List<String> reconcile(List<Record> side1, List<Record> side2, double variance) {
+        return reconcile(RecordBatch.of(side1), RecordBatch.of(side2), variance);
+    }
+
+    @Override
+    public List<String> reconcile(RecordBatch side1, RecordBatch side2, double variance) {
+        MatchResult result = new MatchResult();
+        reconcile(side1, side2, variance, result);
+        return result.asStrings();
+    }
+
+    @Override
+    public void reconcile(RecordBatch side1, RecordBatch side2, double variance, MatchSink sink) {
+        boolean measured = metrics.enabled();
+        long t = System.nanoTime();
+        int scale = Math.max(side1.scale, side2.scale);
+        RecordBatch s1 = side1.rescale(scale);
+        RecordBatch s2 = side2.rescale(scale);
+        long tolerance = s1.tolerance(variance);
+
+        long[] cuts = cuts(s1.amounts, s2.amounts, executor.parallelism() * RANGES_PER_THREAD);
+        int ranges = cuts.length + 1;
+        SortedSide sorted1 = new SortedSide(s1, cuts);
+        SortedSide sorted2 = new SortedSide(s2, cuts);
+        executor.forEach(ranges, r -> {
+            sorted1.sort(r);
+            sorted2.sort(r);
+        });
+        long[] amounts1 = sorted1.amounts;
+        long[] amounts2 = sorted2.amounts;
+        if (measured) {
+            t = metrics.phase(ReconciliationMetrics.Phase.INDEX_BUILD, t);
+        }
+
+        // partner[side1 slot] = side2 slot or -1; cursor[side1 slot] = Side2 cursor the
+        // slot was decided with; exit[range] = cursor after the range's speculative sweep
+        int[] partner = new int[amounts1.length];
+        int[] cursor = new int[amounts1.length];
+        int[] exit = new int[ranges];
+        executor.forEach(ranges, r -> {
+            int from = sorted1.start[r];
+            int to = sorted1.start[r + 1];
+            int j = from < to ? CasClaimReconciler.lowerBound(amounts2, amounts1[from] - tolerance) : 0;
+            exit[r] = sweep(amounts1, amounts2, tolerance, from, to, j, partner, cursor, false, 0);
+        });
+        int j = exit[0];
+        for (int r = 1; r < ranges; r++) {
+            j = sweep(amounts1, amounts2, tolerance, sorted1.start[r], sorted1.start[r + 1], j, partner, cursor, true, exit[r]);
+        }
+        int[] matchOf = new int[s1.size];
+        boolean[] matched2 = new boolean[s2.size];
+        for (int i = 0; i < amounts1.length; i++) {
+            int p = partner[i];
+            matchOf[sorted1.order[i]] = p >= 0 ? sorted2.order[p] : -1;
+            if (p >= 0) {
+                matched2[p] = true;
+            }
+        }
+        if (measured) {
+            t = metrics.phase(ReconciliationMetrics.Phase.MATCHING, t);
+        }
+
+        int[] unmatched2 = new int[amounts2.length];
+        int leftover = 0;
+        for (int k = 0; k < amounts2.length; k++) {
+            if (!matched2[k]) {
+                unmatched2[leftover++] = sorted2.order[k];
+            }
+        }
+        if (measured) {
+            t = metrics.phase(ReconciliationMetrics.Phase.UNMATCHED, t);
+        }
+
+        sink.begin(scale);
+        long pairs = 0;
+        for (int i = 0; i < s1.size; i++) {
+            int m = matchOf[i];
+            if (m >= 0) {
+                sink.matchedPair(s1.ids[i], s1.amounts[i], s2.ids[m], s2.amounts[m]);
+                pairs++;
+            } else {
+                sink.unmatchedSide1(s1.ids[i], s1.amounts[i]);
+            }
+        }
+        for (int u = 0; u < leftover; u++) {
+            sink.unmatchedSide2(s2.ids[unmatched2[u]], s2.amounts[unmatched2[u]]);
+        }
+        if (measured) {
+            metrics.phase(ReconciliationMetrics.Phase.EMISSION, t);
+            metrics.outcomes(pairs, s1.size - pairs, s2.size - pairs);
+        }
+    }
+
+    // SortMergeReconciler.sweep over Side1 slots [from, to) starting at Side2 cursor j;
+    // returns the cursor after the last slot. When resuming, the sweep stops at the first
+    // slot decided with the same cursor as before and returns the earlier exit cursor.
+    static int sweep(long[] amounts1, long[] amounts2, long tolerance, int from, int to, int j,
+                     int[] partner, int[] cursor, boolean resume, int exit) {
+        for (int i = from; i < to; i++) {
+            long a = amounts1[i];
+            while (j < amounts2.length && a - amounts2[j] > tolerance) {
+                j++;
+            }
+            if (resume && cursor[i] == j) {
+                return exit;
+            }
+            cursor[i] = j;
+            if (j < amounts2.length && amounts2[j] - a <= tolerance) {
+                partner[i] = j++;
+            } else {
+                partner[i] = -1;
+            }
+        }
+        return j;
+    }
+
+    // Up to ranges - 1 increasing amounts splitting both sides into ranges of about equal
+    // row count, read off a fixed-stride sample so the cuts are the same on every run
+    static long[] cuts(long[] amounts1, long[] amounts2, int ranges) {
+        int samples = Math.min(amounts1.length + amounts2.length, ranges * SAMPLES_PER_RANGE);
+        if (ranges < 2 || samples == 0) {
+            return new long[0];
+        }
+        long[] sample = new long[samples];
+        double stride = (double) (amounts1.length + amounts2.length) / samples;
+        for (int k = 0; k < samples; k++) {
+            int row = (int) (k * stride);
+            sample[k] = row < amounts1.length ? amounts1[row] : amounts2[row - amounts1.length];
+        }
+        Arrays.sort(sample);
+        long[] cuts = new long[ranges - 1];
+        int n = 0;
+        for (int r = 1; r < ranges; r++) {
+            long cut = sample[(int) ((long) r * samples / ranges)];
+            if (n == 0 || cut > cuts[n - 1]) {
+                cuts[n++] = cut;
+            }
+        }
+        return Arrays.copyOf(cuts, n);
+    }
+
+    // One side bucketed by amount range (range r holds cuts[r - 1] <= amount < cuts[r]) and,
+    // once sort has run for every range, ordered by (amount, id) overall
+    static final class SortedSide {
+        final long[] amounts;
+        final int[] order;
+        // Range r covers slots [start[r], start[r + 1])
+        final int[] start;
+        private final int[] ids;
+        // Scratch keys for the id tie-break; ranges use disjoint slices
+        private final long[] tieKeys;
+
+        SortedSide(RecordBatch side, long[] cuts) {
+            int n = side.size;
+            amounts = new long[n];
+            order = new int[n];
+            start = new int[cuts.length + 2];
+            ids = side.ids;
+            tieKeys = new long[n];
+            int[] range = new int[n];
+            for (int i = 0; i < n; i++) {
+                range[i] = upperBound(cuts, side.amounts[i]);
+                start[range[i] + 1]++;
+            }
+            for (int r = 0; r <= cuts.length; r++) {
+                start[r + 1] += start[r];
+            }
+            int[] next = Arrays.copyOf(start, start.length - 1);
+            for (int i = 0; i < n; i++) {
+                int slot = next[range[i]]++;
+                amounts[slot] = side.amounts[i];
+                order[slot] = i;
+            }
+        }
+
+        void sort(int r) {
+            int from = start[r];
+            int to = start[r + 1];
+            PrimitiveSort.sort(amounts, order, from, to);
+            for (int run = from; run < to; ) {
+                int end = run + 1;
+                while (end < to && amounts[end] == amounts[run]) {
+                    end++;
+                }
+                if (end - run > 1) {
+                    for (int k = run; k < end; k++) {
+                        tieKeys[k] = ids[order[k]];
+                    }
+                    PrimitiveSort.sort(tieKeys, order, run, end);
+                }
+                run = end;
+            }
+        }
+
+        // Number of cuts <= amount
+        private static int upperBound(long[] cuts, long amount) {
+            int lo = 0, hi = cuts.length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (cuts[mid] <= amount) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+    }
+}
@@ -0,0 +1,352 @@
+package com.example.reconciliation;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+// Bounded-memory sort-merge sweep for sides that do not fit in memory.
+//
+// Rows are streamed into a SpillingSide, which sorts every memoryBudget / 2 worth of rows
+// with PrimitiveSort and spills it to disk as a SortedRunFile. At reconcile time the runs
+// of each side are k-way merged back into one ascending stream (with extra merge passes
+// when there are more runs than read buffers fit in the budget) and the two streams are
+// swept with the same two-pointer rule as SortMergeReconciler. Results go to the sink
+// as they are produced, in amount order, so nothing proportional to the row count is
+// kept on the heap. The direct I/O buffers come from a per-side BufferPool, so a side
+// allocates at most fan-in + 1 of them however many runs and merge passes it goes through.
+public class ExternalSortReconciler implements Reconciler {
+
+    public static final long DEFAULT_MEMORY_BUDGET = 64L << 20;
+    static final int READ_BUFFER_BYTES = 64 << 10;
+
+    private final Path workDir;
+    private final long memoryBudget;
+
+    public ExternalSortReconciler() {
+        this(null, DEFAULT_MEMORY_BUDGET);
+    }
+
+    // workDir null means the default temporary-file directory
+    public ExternalSortReconciler(Path workDir, long memoryBudget) {
+        if (memoryBudget < 4L * READ_BUFFER_BYTES) {
+            throw new IllegalArgumentException("memoryBudget must be at least " + 4 * READ_BUFFER_BYTES + " bytes: " + memoryBudget);
+        }
+        this.workDir = workDir;
+        this.memoryBudget = memoryBudget;
+    }
+
+    public SpillingSide newSide(int scale) {
+        FixedPoint.checkScale(scale);
+        try {
+            Path dir = workDir != null ? Files.createTempDirectory(workDir, "recon-") : Files.createTempDirectory("recon-");
+            return new SpillingSide(dir, scale, memoryBudget / 2);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public List<String> reconcile(List<Record> side1, List<Record> side2, double variance) {
+        return reconcile(RecordBatch.of(side1), RecordBatch.of(side2), variance);
+    }
+
+    @Override
+    public List<String> reconcile(RecordBatch side1, RecordBatch side2, double variance) {
+        MatchResult result = new MatchResult();
+        reconcile(side1, side2, variance, result);
+        return result.asStrings();
+    }
+
+    @Override
+    public void reconcile(RecordBatch side1, RecordBatch side2, double variance, MatchSink sink) {
+        int scale = Math.max(side1.scale, side2.scale);
+        RecordBatch s1 = side1.rescale(scale);
+        RecordBatch s2 = side2.rescale(scale);
+        try (SpillingSide spill1 = newSide(scale); SpillingSide spill2 = newSide(scale)) {
+            for (int i = 0; i < s1.size; i++) {
+                spill1.add(s1.ids[i], s1.amounts[i]);
+            }
+            for (int i = 0; i < s2.size; i++) {
+                spill2.add(s2.ids[i], s2.amounts[i]);
+            }
+            reconcile(spill1, spill2, variance, sink);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // The outcome lines of MatchResult.asStrings, for callers outside the package
+    public List<String> reconcile(SpillingSide side1, SpillingSide side2, double variance) throws IOException {
+        MatchResult result = new MatchResult();
+        reconcile(side1, side2, variance, result);
+        return result.asStrings();
+    }
+
+    // Returns the number of matched pairs
+    public long reconcile(SpillingSide side1, SpillingSide side2, double variance, MatchSink sink) throws IOException {
+        if (side1.scale != side2.scale) {
+            throw new IllegalArgumentException("Both sides must use the same scale: " + side1.scale + " vs " + side2.scale);
+        }
+        int scale = side1.scale;
+        long tolerance = FixedPoint.toleranceToMinor(variance, scale);
+        long pairs = 0;
+        sink.begin(scale);
+        try (MergedRuns a = side1.sorted(); MergedRuns b = side2.sorted()) {
+            boolean hasB = b.next();
+            while (a.next()) {
+                // Side2 amounts left of the window can no longer match any later Side1 amount
+                while (hasB && a.amount - b.amount > tolerance) {
+                    sink.unmatchedSide2(b.id, b.amount);
+                    hasB = b.next();
+                }
+                if (hasB && b.amount - a.amount <= tolerance) {
+                    sink.matchedPair(a.id, a.amount, b.id, b.amount);
+                    pairs++;
+                    hasB = b.next();
+                } else {
+                    sink.unmatchedSide1(a.id, a.amount);
+                }
+            }
+            while (hasB) {
+                sink.unmatchedSide2(b.id, b.amount);
+                hasB = b.next();
+            }
+        }
+        return pairs;
+    }
+
+    // Write side of the external sort: rows are buffered in primitive arrays and spilled as
+    // a sorted run whenever the buffer is full. Closing deletes the runs.
+    public static final class SpillingSide implements Closeable {
+        final int scale;
+        private final Path dir;
+        private final long memoryBudget;
+        private final List<Path> runs = new ArrayList<>();
+        private final BufferPool buffers = new BufferPool();
+        private long[] amounts;
+        private int[] ids;
+        private int buffered;
+        private long rows;
+
+        private SpillingSide(Path dir, int scale, long memoryBudget) {
+            this.dir = dir;
+            this.scale = scale;
+            this.memoryBudget = memoryBudget;
+            int capacity = (int) Math.min(Integer.MAX_VALUE - 8, memoryBudget / SortedRunFile.ROW_BYTES);
+            this.amounts = new long[capacity];
+            this.ids = new int[capacity];
+        }
+
+        public void add(int id, long amount) throws IOException {
+            if (amounts == null) {
+                throw new IllegalStateException("Side has already been sorted");
+            }
+            if (buffered == amounts.length) {
+                spill();
+            }
+            amounts[buffered] = amount;
+            ids[buffered] = id;
+            buffered++;
+            rows++;
+        }
+
+        // Amount in major units, rounded to the side's scale
+        public void add(int id, double amount) throws IOException {
+            add(id, FixedPoint.toMinor(amount, scale));
+        }
+
+        public long size() {
+            return rows;
+        }
+
+        private void spill() throws IOException {
+            PrimitiveSort.sort(amounts, ids, 0, buffered);
+            Path run = dir.resolve("run-" + runs.size() + ".bin");
+            ByteBuffer buffer = buffers.take();
+            try (SortedRunFile.Writer writer = new SortedRunFile.Writer(run, scale, buffer)) {
+                for (int i = 0; i < buffered; i++) {
+                    writer.write(amounts[i], ids[i]);
+                }
+            } finally {
+                buffers.release(buffer);
+            }
+            runs.add(run);
+            buffered = 0;
+        }
+
+        // Spills what is still buffered, releases the sort buffer and merges the runs down to
+        // as many as the budget has read buffers for
+        MergedRuns sorted() throws IOException {
+            if (amounts != null) {
+                if (buffered > 0 || runs.isEmpty()) {
+                    spill();
+                }
+                amounts = null;
+                ids = null;
+            }
+            int fanIn = (int) Math.max(2, Math.min(1024, memoryBudget / READ_BUFFER_BYTES - 1));
+            int generation = 0;
+            while (runs.size() > fanIn) {
+                List<Path> merged = new ArrayList<>();
+                for (int from = 0; from < runs.size(); from += fanIn) {
+                    List<Path> group = runs.subList(from, Math.min(runs.size(), from + fanIn));
+                    Path run = dir.resolve("merge-" + generation + "-" + merged.size() + ".bin");
+                    ByteBuffer buffer = buffers.take();
+                    try (MergedRuns in = new MergedRuns(group, buffers);
+                         SortedRunFile.Writer writer = new SortedRunFile.Writer(run, scale, buffer)) {
+                        while (in.next()) {
+                            writer.write(in.amount, in.id);
+                        }
+                    } finally {
+                        buffers.release(buffer);
+                    }
+                    for (Path p : group) {
+                        Files.delete(p);
+                    }
+                    merged.add(run);
+                }
+                runs.clear();
+                runs.addAll(merged);
+                generation++;
+            }
+            return new MergedRuns(runs, buffers);
+        }
+
+        @Override
+        public void close() throws IOException {
+            amounts = null;
+            ids = null;
+            for (Path run : runs) {
+                Files.deleteIfExists(run);
+            }
+            runs.clear();
+            Files.deleteIfExists(dir);
+        }
+    }
+
+    // Free list of READ_BUFFER_BYTES direct buffers for the run files of one side. Direct
+    // memory is only returned when the GC collects its owner, so a fresh buffer per reader
+    // and writer of every merge pass piles up far past the memory budget.
+    static final class BufferPool {
+        private final ArrayDeque<ByteBuffer> free = new ArrayDeque<>();
+
+        ByteBuffer take() {
+            ByteBuffer buffer = free.poll();
+            return buffer != null ? buffer : SortedRunFile.buffer(READ_BUFFER_BYTES);
+        }
+
+        void release(ByteBuffer buffer) {
+            free.push(buffer);
+        }
+    }
+
+    // k-way merge of sorted runs through a binary min-heap of readers keyed on the current
+    // amount; amount and id hold the current row after next() returns true. The readers'
+    // buffers go back to the pool on close.
+    static final class MergedRuns implements Closeable {
+        private final SortedRunFile.Reader[] heap;
+        private final BufferPool buffers;
+        private final List<ByteBuffer> borrowed = new ArrayList<>();
+        private int size;
+        private boolean started;
+        long amount;
+        int id;
+
+        MergedRuns(List<Path> runs, BufferPool buffers) throws IOException {
+            this.heap = new SortedRunFile.Reader[runs.size()];
+            this.buffers = buffers;
+            try {
+                for (Path run : runs) {
+                    ByteBuffer buffer = buffers.take();
+                    borrowed.add(buffer);
+                    // On the heap before its first read, so a failing read closes it too
+                    SortedRunFile.Reader reader = new SortedRunFile.Reader(run, buffer);
+                    heap[size++] = reader;
+                    if (!reader.next()) {
+                        heap[--size] = null;
+                        reader.close();
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                // Readers opened so far would otherwise keep their files and buffers
+                try {
+                    close();
+                } catch (IOException suppressed) {
+                    e.addSuppressed(suppressed);
+                }
+                throw e;
+            }
+            for (int i = size / 2 - 1; i >= 0; i--) {
+                siftDown(i);
+            }
+        }
+
+        boolean next() throws IOException {
+            if (started && size > 0) {
+                // Advance the reader that produced the previous row
+                SortedRunFile.Reader top = heap[0];
+                if (!top.next()) {
+                    top.close();
+                    heap[0] = heap[--size];
+                    heap[size] = null;
+                }
+                siftDown(0);
+            }
+            started = true;
+            if (size == 0) {
+                return false;
+            }
+            amount = heap[0].amount;
+            id = heap[0].id;
+            return true;
+        }
+
+        private void siftDown(int i) {
+            while (2 * i + 1 < size) {
+                int child = 2 * i + 1;
+                if (child + 1 < size && heap[child + 1].amount < heap[child].amount) {
+                    child++;
+                }
+                if (heap[i].amount <= heap[child].amount) {
+                    return;
+                }
+                SortedRunFile.Reader r = heap[i];
+                heap[i] = heap[child];
+                heap[child] = r;
+                i = child;
+            }
+        }
+
+        // Closes every reader even when one fails, and throws the first failure
+        @Override
+        public void close() throws IOException {
+            IOException failure = null;
+            for (int i = 0; i < size; i++) {
+                try {
+                    heap[i].close();
+                } catch (IOException e) {
+                    if (failure == null) {
+                        failure = e;
+                    } else {
+                        failure.addSuppressed(e);
+                    }
+                }
+                heap[i] = null;
+            }
+            size = 0;
+            for (ByteBuffer buffer : borrowed) {
+                buffers.release(buffer);
+            }
+            borrowed.clear();
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+}
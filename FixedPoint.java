@@ -0,0 +1,134 @@
+package com.example.reconciliation;
+
+import java.util.List;
+
+// Fixed-point amounts: a long count of minor units at a per-dataset decimal scale
+// (12.34 at scale 2 is 1234). Comparisons and hashing are plain long operations, and
+// a boundary match such as |10.10 - 10.00| <= 0.10 cannot flip because of binary
+// rounding the way it can with double.
+final class FixedPoint {
+
+    static final int MAX_SCALE = 9;
+
+    private static final long[] POWERS_OF_TEN = new long[MAX_SCALE + 1];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i <= MAX_SCALE; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    private FixedPoint() {
+    }
+
+    static void checkScale(int scale) {
+        if (scale < 0 || scale > MAX_SCALE) {
+            throw new IllegalArgumentException("scale must be between 0 and " + MAX_SCALE + ": " + scale);
+        }
+    }
+
+    static long powerOfTen(int scale) {
+        return POWERS_OF_TEN[scale];
+    }
+
+    public static long toMinor(double amount, int scale) {
+        return Math.round(amount * POWERS_OF_TEN[scale]);
+    }
+
+    // A tolerance such as 1.5 in minor units, rounded down. Amounts at scale are whole minor
+    // units, so |a - b| <= variance holds exactly when |a - b| <= the result; rounding a
+    // variance with more decimals than the data up would accept pairs outside it.
+    public static long toleranceToMinor(double variance, int scale) {
+        double scaled = variance * POWERS_OF_TEN[scale];
+        return isExactAtScale(variance, scale) ? Math.round(scaled) : (long) Math.floor(scaled);
+    }
+
+    public static double toDouble(long minor, int scale) {
+        return (double) minor / POWERS_OF_TEN[scale];
+    }
+
+    public static long rescale(long minor, int fromScale, int toScale) {
+        if (toScale < fromScale) {
+            throw new IllegalArgumentException("Cannot reduce scale from " + fromScale + " to " + toScale + " without losing precision");
+        }
+        return Math.multiplyExact(minor, POWERS_OF_TEN[toScale - fromScale]);
+    }
+
+    // Smallest scale that represents every amount exactly
+    public static int inferScale(List<Record> records) {
+        int scale = 0;
+        for (Record r : records) {
+            while (scale < MAX_SCALE && !isExactAtScale(r.amount, scale)) {
+                scale++;
+            }
+        }
+        return scale;
+    }
+
+    private static boolean isExactAtScale(double amount, int scale) {
+        double scaled = amount * POWERS_OF_TEN[scale];
+        return Math.abs(scaled - Math.rint(scaled)) <= 1e-9 * Math.max(1.0, Math.abs(scaled));
+    }
+
+    // Parses "-1234.5" into minor units without going through BigDecimal or double.
+    // Digits beyond the scale are rejected rather than silently rounded.
+    public static long parse(CharSequence text, int scale) {
+        int len = text.length();
+        int i = 0;
+        boolean negative = false;
+        if (len > 0 && (text.charAt(0) == '-' || text.charAt(0) == '+')) {
+            negative = text.charAt(0) == '-';
+            i++;
+        }
+        if (i == len) {
+            throw new NumberFormatException("Not an amount: " + text);
+        }
+
+        long value = 0;
+        int fractionDigits = -1;
+        for (; i < len; i++) {
+            char c = text.charAt(i);
+            if (c == '.' && fractionDigits < 0) {
+                fractionDigits = 0;
+                continue;
+            }
+            if (c < '0' || c > '9') {
+                throw new NumberFormatException("Not an amount: " + text);
+            }
+            if (fractionDigits >= 0 && ++fractionDigits > scale) {
+                if (c != '0') {
+                    throw new NumberFormatException("More than " + scale + " decimals: " + text);
+                }
+                continue;
+            }
+            value = Math.addExact(Math.multiplyExact(value, 10), c - '0');
+        }
+        value = Math.multiplyExact(value, POWERS_OF_TEN[scale - Math.max(0, Math.min(fractionDigits, scale))]);
+        return negative ? -value : value;
+    }
+
+    public static String format(long minor, int scale) {
+        if (scale == 0) {
+            return Long.toString(minor);
+        }
+        StringBuilder sb = new StringBuilder(24);
+        if (minor < 0) {
+            sb.append('-');
+        }
+        long abs = Math.abs(minor);
+        sb.append(abs / POWERS_OF_TEN[scale]).append('.');
+        String fraction = Long.toString(abs % POWERS_OF_TEN[scale]);
+        for (int pad = fraction.length(); pad < scale; pad++) {
+            sb.append('0');
+        }
+        return sb.append(fraction).toString();
+    }
+
+    // SQL expression that has the database scale a NUMBER column to minor units, so the
+    // driver hands it back through ResultSet.getLong without materialising a BigDecimal
+    public static String minorUnitsExpression(String column, int scale) {
+        checkScale(scale);
+        return scale == 0 ? "ROUND(" + column + ")" : "ROUND(" + column + " * " + POWERS_OF_TEN[scale] + ")";
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.reconciliation;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Claim state of a sorted Side2 column shared by parallel probes: a claim bitmap (see
+// CandidateScan) plus SkipPointers that jump over runs of claimed slots, so a probe into
+// thousands of already used duplicates costs near constant time instead of a rescan of
+// the run.
+//
+// The bitmap is the truth, the pointers are hints: a slot whose bit is set but whose
+// pointer was not yet advanced is stepped over and fixed by whoever reads it next.
+final class FreeSlots {
+
+    private final int size;
+    private final AtomicLongArray claimed;
+    private final SkipPointers pointers;
+
+    FreeSlots(int size) {
+        this(CandidateScan.bitmap(size), size);
+    }
+
+    // Over an existing, still empty claim bitmap of size slots
+    FreeSlots(AtomicLongArray claimed, int size) {
+        this.size = size;
+        this.claimed = claimed;
+        this.pointers = new SkipPointers(size);
+    }
+
+    boolean isClaimed(int slot) {
+        return CandidateScan.isClaimed(claimed, slot);
+    }
+
+    // Sets the slot's claim bit; false when another thread got there first
+    boolean claim(int slot) {
+        if (!CandidateScan.claim(claimed, slot)) {
+            return false;
+        }
+        pointers.take(slot);
+        return true;
+    }
+
+    // Slot of the unclaimed amount closest to target within tolerance, or -1; ties go to
+    // the lower amount. The caller still has to win claim on it.
+    int nearest(long[] sortedAmounts, long target, long tolerance) {
+        return nearest(sortedAmounts, 0, size, target, tolerance);
+    }
+
+    // The same within slots [from, to), a range sorted on its own (a hash-grid bucket)
+    int nearest(long[] sortedAmounts, int from, int to, long target, long tolerance) {
+        int split = CasClaimReconciler.lowerBound(sortedAmounts, from, to, target);
+        int above = nextFree(split);
+        int below = previousFree(split - 1);
+        long aboveDiff = above < to ? sortedAmounts[above] - target : Long.MAX_VALUE;
+        long belowDiff = below >= from ? target - sortedAmounts[below] : Long.MAX_VALUE;
+        if (Math.min(aboveDiff, belowDiff) > tolerance) {
+            return -1;
+        }
+        return belowDiff <= aboveDiff ? below : above;
+    }
+
+    // First unclaimed slot at or after i, size when there is none
+    int nextFree(int i) {
+        for (i = pointers.next(i); i < size && isClaimed(i); i = pointers.next(i + 1)) {
+            pointers.take(i);
+        }
+        return i;
+    }
+
+    // Last unclaimed slot at or before i, -1 when there is none
+    int previousFree(int i) {
+        for (i = pointers.previous(i); i >= 0 && isClaimed(i); i = pointers.previous(i - 1)) {
+            pointers.take(i);
+        }
+        return i;
+    }
+}
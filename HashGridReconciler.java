@@ -0,0 +1,202 @@
+package com.example.reconciliation;
+
+import java.util.Arrays;
+import java.util.List;
+
+// Hash-grid bucket index for tight tolerances.
+// Side2 rows are grouped into buckets of width variance (bucket = floor(amount / variance)),
+// so every candidate of a Side1 amount sits in its own bucket or one of the two
+// neighbours. Bucket lookup is O(1) through a primitive open-addressing map and the rows
+// of each bucket are stored contiguously, sorted by amount. Claims are bits in a FreeSlots
+// over those positions, as in CasClaimReconciler, so the index can be probed from many
+// threads at once, and a probe steps over the claimed rows of a bucket through its skip
+// pointers instead of rereading them.
+public class HashGridReconciler implements Reconciler {
+
+    private final ReconcilerExecutor executor;
+    private final ReconciliationMetrics metrics;
+
+    public HashGridReconciler() {
+        this(ReconcilerExecutor.commonPool());
+    }
+
+    public HashGridReconciler(ReconcilerExecutor executor) {
+        this(executor, ReconciliationMetrics.global("hashGrid"));
+    }
+
+    HashGridReconciler(ReconciliationMetrics metrics) {
+        this(ReconcilerExecutor.commonPool(), metrics);
+    }
+
+    HashGridReconciler(ReconcilerExecutor executor, ReconciliationMetrics metrics) {
+        this.executor = executor;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public List<String> reconcile(List<Record> side1, List<Record> side2, double variance) {
+        return reconcile(RecordBatch.of(side1), RecordBatch.of(side2), variance);
+    }
+
+    @Override
+    public List<String> reconcile(RecordBatch side1, RecordBatch side2, double variance) {
+        MatchResult result = new MatchResult();
+        reconcile(side1, side2, variance, result);
+        return result.asStrings();
+    }
+
+    @Override
+    public void reconcile(RecordBatch side1, RecordBatch side2, double variance, MatchSink sink) {
+        boolean measured = metrics.enabled();
+        long t = System.nanoTime();
+        int scale = Math.max(side1.scale, side2.scale);
+        RecordBatch s1 = side1.rescale(scale);
+        RecordBatch s2 = side2.rescale(scale);
+        long tolerance = s1.tolerance(variance);
+        Grid grid = new Grid(s2.amounts, Math.max(1, tolerance));
+        FreeSlots claimed = new FreeSlots(s2.size);
+        if (measured) {
+            t = metrics.phase(ReconciliationMetrics.Phase.INDEX_BUILD, t);
+        }
+
+        // matchOf[side1 row] = side2 row, or -1; every task writes only its own slot
+        int[] matchOf = new int[s1.size];
+        executor.forEach(s1.size, i -> {
+            long target = s1.amounts[i];
+            int retries = 0;
+            int best;
+            matchOf[i] = -1;
+            while ((best = grid.nearestUnclaimed(target, tolerance, claimed)) >= 0) {
+                if (claimed.claim(best)) {
+                    matchOf[i] = grid.rows[best];
+                    break;
+                }
+                // Lost the claim to another thread, retry on the next best candidate
+                retries++;
+            }
+            if (measured) {
+                metrics.candidateWindow(grid.candidates(target));
+                metrics.claimRetries(retries);
+            }
+        });
+        if (measured) {
+            t = metrics.phase(ReconciliationMetrics.Phase.MATCHING, t);
+        }
+
+        int[] unmatched2 = new int[s2.size];
+        int leftover = 0;
+        for (int p = 0; p < s2.size; p++) {
+            if (!claimed.isClaimed(p)) {
+                unmatched2[leftover++] = grid.rows[p];
+            }
+        }
+        // Side2 input order, as before the grid
+        Arrays.sort(unmatched2, 0, leftover);
+        if (measured) {
+            t = metrics.phase(ReconciliationMetrics.Phase.UNMATCHED, t);
+        }
+
+        sink.begin(scale);
+        long pairs = 0;
+        for (int i = 0; i < s1.size; i++) {
+            int m = matchOf[i];
+            if (m >= 0) {
+                sink.matchedPair(s1.ids[i], s1.amounts[i], s2.ids[m], s2.amounts[m]);
+                pairs++;
+            } else {
+                sink.unmatchedSide1(s1.ids[i], s1.amounts[i]);
+            }
+        }
+        for (int u = 0; u < leftover; u++) {
+            sink.unmatchedSide2(s2.ids[unmatched2[u]], s2.amounts[unmatched2[u]]);
+        }
+        if (measured) {
+            metrics.phase(ReconciliationMetrics.Phase.EMISSION, t);
+            metrics.outcomes(pairs, s1.size - pairs, s2.size - pairs);
+        }
+    }
+
+    // Bucketed rows in CSR form: positions start[b] .. start[b + 1) hold the Side2 rows of
+    // bucket b in ascending amount order, rows[p] the row and sorted[p] its amount. Claims
+    // are made on positions.
+    static final class Grid {
+        private final long width;
+        private final LongIntHashMap bucketOf;
+        private final int[] start;
+        final int[] rows;
+        private final long[] sorted;
+
+        Grid(long[] amounts, long width) {
+            this.width = width;
+            this.bucketOf = new LongIntHashMap(Math.max(16, amounts.length / 4));
+
+            int[] bucketOfRow = new int[amounts.length];
+            int buckets = 0;
+            for (int r = 0; r < amounts.length; r++) {
+                long key = Math.floorDiv(amounts[r], width);
+                int b = bucketOf.getOrDefault(key, -1);
+                if (b < 0) {
+                    b = buckets++;
+                    bucketOf.put(key, b);
+                }
+                bucketOfRow[r] = b;
+            }
+
+            start = new int[buckets + 1];
+            for (int b : bucketOfRow) {
+                start[b + 1]++;
+            }
+            for (int b = 0; b < buckets; b++) {
+                start[b + 1] += start[b];
+            }
+            rows = new int[amounts.length];
+            sorted = new long[amounts.length];
+            int[] fill = new int[buckets];
+            for (int r = 0; r < amounts.length; r++) {
+                int b = bucketOfRow[r];
+                int p = start[b] + fill[b]++;
+                rows[p] = r;
+                sorted[p] = amounts[r];
+            }
+            for (int b = 0; b < buckets; b++) {
+                PrimitiveSort.sort(sorted, rows, start[b], start[b + 1]);
+            }
+        }
+
+        // Position of the closest unclaimed amount within tolerance of target, or -1; ties go
+        // to the lower amount
+        int nearestUnclaimed(long target, long tolerance, FreeSlots claimed) {
+            long key = Math.floorDiv(target, width);
+            int best = -1;
+            long minDiff = Long.MAX_VALUE;
+            for (long k = key - 1; k <= key + 1; k++) {
+                int b = bucketOf.getOrDefault(k, -1);
+                if (b < 0) {
+                    continue;
+                }
+                int p = claimed.nearest(sorted, start[b], start[b + 1], target, tolerance);
+                if (p >= 0 && Math.abs(target - sorted[p]) < minDiff) {
+                    minDiff = Math.abs(target - sorted[p]);
+                    best = p;
+                    if (minDiff == 0) {
+                        return best;
+                    }
+                }
+            }
+            return best;
+        }
+
+        // Rows in the buckets a lookup of target probes
+        int candidates(long target) {
+            long key = Math.floorDiv(target, width);
+            int count = 0;
+            for (long k = key - 1; k <= key + 1; k++) {
+                int b = bucketOf.getOrDefault(k, -1);
+                if (b >= 0) {
+                    count += start[b + 1] - start[b];
+                }
+            }
+            return count;
+        }
+    }
+}
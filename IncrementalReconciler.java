@@ -0,0 +1,156 @@
+package com.example.reconciliation;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+// Daily reconciliation against the open items left by earlier runs. Only the new records
+// (the delta) are sorted; they are matched
+//   1. new Side1 against open Side2 items, nearest amount first,
+//   2. new Side2 against open Side1 items,
+//   3. the remaining new records against each other with the sort-merge sweep,
+// and whatever is still unmatched is added to the open-items indexes as their newest
+// segment for the next run. Open items never have to be matched against each other again:
+// they already failed to match when they were new.
+//
+// Results only describe the delta: new pairs, pairs that close an open item, and new
+// records that stay open. Items still open from earlier runs are in the returned indexes,
+// with their age, rather than repeated as "No Match" every day.
+public class IncrementalReconciler {
+
+    public static final class Run {
+        public final MatchResult results;
+        public final OpenItemsIndex open1;
+        public final OpenItemsIndex open2;
+
+        Run(MatchResult results, OpenItemsIndex open1, OpenItemsIndex open2) {
+            this.results = results;
+            this.open1 = open1;
+            this.open2 = open2;
+        }
+    }
+
+    // Loads both open-items files (missing means empty), reconciles the delta and saves
+    // the new open items back in place
+    public Run reconcile(Path openFile1, Path openFile2, RecordBatch delta1, RecordBatch delta2, double variance, LocalDate businessDate) throws IOException {
+        int scale = Math.max(delta1.scale, delta2.scale);
+        Run run = reconcile(OpenItemsIndex.load(openFile1, scale), OpenItemsIndex.load(openFile2, scale), delta1, delta2, variance, businessDate);
+        run.open1.save(openFile1);
+        run.open2.save(openFile2);
+        return run;
+    }
+
+    // The open-items indexes are updated in place (unless they had to be rescaled to the
+    // delta's scale) and returned in the Run
+    public Run reconcile(OpenItemsIndex open1, OpenItemsIndex open2, RecordBatch delta1, RecordBatch delta2, double variance, LocalDate businessDate) {
+        int scale = Math.max(Math.max(delta1.scale, delta2.scale), Math.max(open1.scale, open2.scale));
+        RecordBatch s1 = delta1.rescale(scale);
+        RecordBatch s2 = delta2.rescale(scale);
+        open1 = open1.rescale(scale);
+        open2 = open2.rescale(scale);
+        long tolerance = s1.tolerance(variance);
+
+        long[] amounts1 = new long[s1.size];
+        long[] amounts2 = new long[s2.size];
+        int[] order1 = s1.sortedOrder(amounts1);
+        int[] order2 = s2.sortedOrder(amounts2);
+
+        // New rows matched against open items: openMatch[delta row] = open row, or -1
+        int[] openMatch1 = probe(amounts1, order1, open2, tolerance);
+        int[] openMatch2 = probe(amounts2, order2, open1, tolerance);
+
+        // What is left of the delta, in amount order, goes through the sweep
+        int[] rest1 = unmatched(order1, openMatch1);
+        int[] rest2 = unmatched(order2, openMatch2);
+        int[] partner = SortMergeReconciler.sweep(column(s1.amounts, rest1), column(s2.amounts, rest2), tolerance);
+        // deltaMatch1[side1 delta row] = side2 delta row, or -1
+        int[] deltaMatch1 = new int[s1.size];
+        boolean[] deltaMatched2 = new boolean[s2.size];
+        Arrays.fill(deltaMatch1, -1);
+        for (int k = 0; k < rest1.length; k++) {
+            if (partner[k] >= 0) {
+                deltaMatch1[rest1[k]] = rest2[partner[k]];
+                deltaMatched2[rest2[partner[k]]] = true;
+            }
+        }
+
+        MatchResult results = new MatchResult();
+        results.begin(scale);
+        boolean[] matched1 = new boolean[s1.size];
+        boolean[] matched2 = new boolean[s2.size];
+        for (int i = 0; i < s1.size; i++) {
+            int o = openMatch1[i];
+            int m = deltaMatch1[i];
+            matched1[i] = o >= 0 || m >= 0;
+            if (o >= 0) {
+                results.matchedPair(s1.ids[i], s1.amounts[i], open2.id(o), open2.minorAmount(o));
+            } else if (m >= 0) {
+                results.matchedPair(s1.ids[i], s1.amounts[i], s2.ids[m], s2.amounts[m]);
+            } else {
+                results.unmatchedSide1(s1.ids[i], s1.amounts[i]);
+            }
+        }
+        for (int j = 0; j < s2.size; j++) {
+            int o = openMatch2[j];
+            matched2[j] = o >= 0 || deltaMatched2[j];
+            if (o >= 0) {
+                results.matchedPair(open1.id(o), open1.minorAmount(o), s2.ids[j], s2.amounts[j]);
+            } else if (!deltaMatched2[j]) {
+                results.unmatchedSide2(s2.ids[j], s2.amounts[j]);
+            }
+        }
+
+        carryOver(open1, s1, order1, matched1, businessDate);
+        carryOver(open2, s2, order2, matched2, businessDate);
+        return new Run(results, open1, open2);
+    }
+
+    // For every delta row (visited in amount order) the slot of the nearest still-open item
+    // within tolerance, which is then closed; -1 when there is none
+    private static int[] probe(long[] sortedAmounts, int[] order, OpenItemsIndex open, long tolerance) {
+        int[] match = new int[order.length];
+        for (int k = 0; k < order.length; k++) {
+            match[order[k]] = open.closeNearest(sortedAmounts[k], tolerance);
+        }
+        return match;
+    }
+
+    private static int[] unmatched(int[] order, int[] match) {
+        int[] rows = new int[order.length];
+        int n = 0;
+        for (int row : order) {
+            if (match[row] < 0) {
+                rows[n++] = row;
+            }
+        }
+        return Arrays.copyOf(rows, n);
+    }
+
+    private static long[] column(long[] amounts, int[] rows) {
+        long[] column = new long[rows.length];
+        for (int k = 0; k < rows.length; k++) {
+            column[k] = amounts[rows[k]];
+        }
+        return column;
+    }
+
+    // The delta rows that stayed unmatched, already in amount order, become the newest
+    // segment of the open items
+    private static void carryOver(OpenItemsIndex open, RecordBatch delta, int[] order, boolean[] matched, LocalDate businessDate) {
+        int[] fresh = new int[order.length];
+        int n = 0;
+        for (int row : order) {
+            if (!matched[row]) {
+                fresh[n++] = row;
+            }
+        }
+        long[] amounts = new long[n];
+        int[] ids = new int[n];
+        for (int k = 0; k < n; k++) {
+            amounts[k] = delta.amounts[fresh[k]];
+            ids[k] = delta.ids[fresh[k]];
+        }
+        open.open(amounts, ids, businessDate);
+    }
+}
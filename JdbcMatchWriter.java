@@ -0,0 +1,192 @@
+package com.example.reconciliation;
+
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+// Writes match events into a result table in JDBC batches of batchSize rows, buffered in
+// primitive columns so memory stays at one batch however many events a run produces:
+//
+//   CREATE TABLE <table> (match_id NUMBER, match_type VARCHAR2(16),
+//                         side1_id NUMBER, side1_amount NUMBER, side2_id NUMBER, side2_amount NUMBER)
+//
+// Every event gets its own match_id; a group is written as one row per member, all with
+// the group's match_id. Near misses are written as NEAR_MISS rows carrying the match_id of
+// the unmatched row, of either side, they belong to. Call flush after the last event.
+//
+// A writer belongs to one run (one job instance, see BatchConfig): its match_ids are
+// runId * RUN_IDS + 1, + 2, ..., so runs never share an id, and deleteRun removes what an
+// earlier, failed attempt of the same run wrote. Every flush commits in a transaction of
+// its own, so a run never holds more than one batch of uncommitted rows; this takes a
+// second pooled connection while the caller's transaction is open.
+public class JdbcMatchWriter implements MatchSink {
+
+    static final long RUN_IDS = 1L << 32;
+
+    static final String PAIR = "MATCHED";
+    static final String UNMATCHED_SIDE1 = "UNMATCHED_SIDE1";
+    static final String UNMATCHED_SIDE2 = "UNMATCHED_SIDE2";
+    static final String GROUP = "GROUP";
+    static final String NEAR_MISS = "NEAR_MISS";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactions;
+    private final String table;
+    private final String sql;
+    private final int batchSize;
+    private final long runId;
+
+    private final long[] matchIds;
+    private final String[] types;
+    private final int[] ids1;
+    private final long[] amounts1;
+    private final int[] ids2;
+    private final long[] amounts2;
+    // Which sides a buffered row carries, NULL is written for the other
+    private final boolean[] hasSide1;
+    private final boolean[] hasSide2;
+    private int buffered;
+    private long nextMatchId;
+    private long unmatchedId;
+    private long rowsWritten;
+    private int scale = RecordBatch.DEFAULT_SCALE;
+
+    public JdbcMatchWriter(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager, String table, int batchSize, long runId) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be positive: " + batchSize);
+        }
+        if (runId < 0 || runId >= Long.MAX_VALUE / RUN_IDS) {
+            throw new IllegalArgumentException("runId out of range: " + runId);
+        }
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactions = new TransactionTemplate(transactionManager);
+        this.transactions.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.table = table;
+        this.runId = runId;
+        this.nextMatchId = runId * RUN_IDS + 1;
+        this.sql = "INSERT INTO " + table + " (match_id, match_type, side1_id, side1_amount, side2_id, side2_amount)"
+                + " VALUES (?, ?, ?, ?, ?, ?)";
+        this.batchSize = batchSize;
+        this.matchIds = new long[batchSize];
+        this.types = new String[batchSize];
+        this.ids1 = new int[batchSize];
+        this.amounts1 = new long[batchSize];
+        this.ids2 = new int[batchSize];
+        this.amounts2 = new long[batchSize];
+        this.hasSide1 = new boolean[batchSize];
+        this.hasSide2 = new boolean[batchSize];
+    }
+
+    @Override
+    public void begin(int scale) {
+        FixedPoint.checkScale(scale);
+        this.scale = scale;
+    }
+
+    @Override
+    public void matchedPair(int id1, long amount1, int id2, long amount2) {
+        add(nextMatchId++, PAIR, true, id1, amount1, true, id2, amount2);
+    }
+
+    @Override
+    public void unmatchedSide1(int id, long amount) {
+        unmatchedId = nextMatchId++;
+        add(unmatchedId, UNMATCHED_SIDE1, true, id, amount, false, 0, 0);
+    }
+
+    @Override
+    public void nearMiss(int id1, long amount1, int id2, long amount2) {
+        add(unmatchedId, NEAR_MISS, true, id1, amount1, true, id2, amount2);
+    }
+
+    @Override
+    public void unmatchedSide2(int id, long amount) {
+        unmatchedId = nextMatchId++;
+        add(unmatchedId, UNMATCHED_SIDE2, false, 0, 0, true, id, amount);
+    }
+
+    @Override
+    public void matchedGroup(int[] groupIds1, long[] groupAmounts1, int[] groupIds2, long[] groupAmounts2) {
+        long matchId = nextMatchId++;
+        for (int k = 0; k < groupIds1.length; k++) {
+            add(matchId, GROUP, true, groupIds1[k], groupAmounts1[k], false, 0, 0);
+        }
+        for (int k = 0; k < groupIds2.length; k++) {
+            add(matchId, GROUP, false, 0, 0, true, groupIds2[k], groupAmounts2[k]);
+        }
+    }
+
+    private void add(long matchId, String type, boolean side1, int id1, long amount1, boolean side2, int id2, long amount2) {
+        int row = buffered;
+        matchIds[row] = matchId;
+        types[row] = type;
+        hasSide1[row] = side1;
+        ids1[row] = id1;
+        amounts1[row] = amount1;
+        hasSide2[row] = side2;
+        ids2[row] = id2;
+        amounts2[row] = amount2;
+        if (++buffered == batchSize) {
+            flush();
+        }
+    }
+
+    // Deletes every row of this run, e.g. the committed batches of a failed attempt, and
+    // starts its match_ids over; call before the first event
+    public void deleteRun() {
+        buffered = 0;
+        nextMatchId = runId * RUN_IDS + 1;
+        transactions.executeWithoutResult(status ->
+                jdbcTemplate.update("DELETE FROM " + table + " WHERE match_id >= ? AND match_id < ?", runId * RUN_IDS, (runId + 1) * RUN_IDS));
+    }
+
+    public void flush() {
+        if (buffered == 0) {
+            return;
+        }
+        int rows = buffered;
+        transactions.executeWithoutResult(status -> insert(rows));
+        rowsWritten += rows;
+        buffered = 0;
+    }
+
+    private void insert(int rows) {
+        jdbcTemplate.batchUpdate(sql, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int row) throws SQLException {
+                ps.setLong(1, matchIds[row]);
+                ps.setString(2, types[row]);
+                if (hasSide1[row]) {
+                    ps.setInt(3, ids1[row]);
+                    ps.setBigDecimal(4, BigDecimal.valueOf(amounts1[row], scale));
+                } else {
+                    ps.setNull(3, Types.NUMERIC);
+                    ps.setNull(4, Types.NUMERIC);
+                }
+                if (hasSide2[row]) {
+                    ps.setInt(5, ids2[row]);
+                    ps.setBigDecimal(6, BigDecimal.valueOf(amounts2[row], scale));
+                } else {
+                    ps.setNull(5, Types.NUMERIC);
+                    ps.setNull(6, Types.NUMERIC);
+                }
+            }
+
+            @Override
+            public int getBatchSize() {
+                return rows;
+            }
+        });
+    }
+
+    public long rowsWritten() {
+        return rowsWritten;
+    }
+}
@@ -0,0 +1,217 @@
+package com.example.reconciliation;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+// Side2 as a probe index for streaming Side1 through one record at a time: amounts sorted
+// ascending, ids in the same order, and a claim state per slot.
+//
+// Claimed slots are skipped with SkipPointers, one towards higher amounts and one towards
+// lower. The nearest unclaimed amount on either side of a target is then found in near
+// constant time however many equal amounts were already taken, which is what a probe over
+// duplicate-heavy data needs. Not thread-safe: one prober claims at a time.
+//
+// The sorted columns can be saved as a snapshot and reopened memory-mapped, so a restarted
+// step or another job against the same Side2 skips the load and sort; only the claim
+// pointers are per run. Columns are split into segments of
+// OffHeapSide.SEGMENT_ROWS because a single NIO buffer is limited to 2 GB.
+//
+// Snapshot layout (little endian): int magic, int scale, long rows, long source, then the
+// amount column (8 bytes/row) and the id column (4 bytes/row). source is a caller chosen
+// fingerprint of what Side2 was built from; open refuses a snapshot of another source.
+public final class MatchIndex {
+
+    private static final int MAGIC = 0x4D494458;
+    private static final int HEADER_BYTES = 24;
+    private static final int CHUNK_BYTES = 1 << 16;
+    private static final int SEGMENT_SHIFT = OffHeapSide.SEGMENT_SHIFT;
+    private static final int SEGMENT_MASK = OffHeapSide.SEGMENT_ROWS - 1;
+
+    private final int scale;
+    private final int size;
+    private final LongBuffer[] amounts;
+    private final IntBuffer[] ids;
+    private final SkipPointers claims;
+    private int claimed;
+
+    private MatchIndex(int scale, int size, LongBuffer[] amounts, IntBuffer[] ids) {
+        FixedPoint.checkScale(scale);
+        this.scale = scale;
+        this.size = size;
+        this.amounts = amounts;
+        this.ids = ids;
+        this.claims = new SkipPointers(size);
+    }
+
+    MatchIndex(int scale, long[] sortedAmounts, int[] ids) {
+        this(scale, checkLength(sortedAmounts, ids), segments(sortedAmounts), segments(ids));
+    }
+
+    public static MatchIndex build(RecordBatch side2) {
+        long[] sorted = new long[side2.size];
+        int[] order = side2.sortedOrder(sorted);
+        int[] ids = new int[side2.size];
+        for (int k = 0; k < ids.length; k++) {
+            ids[k] = side2.ids[order[k]];
+        }
+        return new MatchIndex(side2.scale, sorted, ids);
+    }
+
+    // Written to a sibling file and moved into place, so a crash mid-write never leaves a
+    // truncated snapshot under the real name
+    public void save(Path file, long source) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ChannelIO.buffer(CHUNK_BYTES);
+            buffer.putInt(MAGIC).putInt(scale).putLong(size).putLong(source);
+            for (int i = 0; i < size; i++) {
+                if (buffer.remaining() < 8) {
+                    ChannelIO.drain(channel, buffer);
+                }
+                buffer.putLong(amount(i));
+            }
+            for (int i = 0; i < size; i++) {
+                if (buffer.remaining() < 4) {
+                    ChannelIO.drain(channel, buffer);
+                }
+                buffer.putInt(id(i));
+            }
+            ChannelIO.drain(channel, buffer);
+            channel.force(false);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Maps a snapshot read-only without copying it; null when there is no snapshot of
+    // source at file, so the caller builds one instead
+    public static MatchIndex open(Path file, long source) throws IOException {
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            channel.read(header, 0);
+            header.flip();
+            if (header.remaining() < HEADER_BYTES || header.getInt() != MAGIC) {
+                throw new IOException("Not a match index snapshot: " + file);
+            }
+            int scale = header.getInt();
+            int rows = Math.toIntExact(header.getLong());
+            if (header.getLong() != source) {
+                return null;
+            }
+            if (channel.size() < HEADER_BYTES + (long) rows * 12) {
+                throw new IOException("Truncated match index snapshot: " + file);
+            }
+            long amountBase = HEADER_BYTES;
+            long idBase = amountBase + (long) rows * 8;
+            int segments = segmentCount(rows);
+            LongBuffer[] amounts = new LongBuffer[segments];
+            IntBuffer[] ids = new IntBuffer[segments];
+            for (int s = 0; s < segments; s++) {
+                long first = (long) s << SEGMENT_SHIFT;
+                int n = rowsInSegment(rows, s);
+                amounts[s] = channel.map(FileChannel.MapMode.READ_ONLY, amountBase + first * 8, (long) n * 8)
+                        .order(ByteOrder.LITTLE_ENDIAN).asLongBuffer();
+                ids[s] = channel.map(FileChannel.MapMode.READ_ONLY, idBase + first * 4, (long) n * 4)
+                        .order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+            }
+            // The mappings stay valid after the channel is closed
+            return new MatchIndex(scale, rows, amounts, ids);
+        }
+    }
+
+    public int scale() {
+        return scale;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int claimedCount() {
+        return claimed;
+    }
+
+    public long amount(int slot) {
+        return amounts[slot >>> SEGMENT_SHIFT].get(slot & SEGMENT_MASK);
+    }
+
+    public int id(int slot) {
+        return ids[slot >>> SEGMENT_SHIFT].get(slot & SEGMENT_MASK);
+    }
+
+    public boolean isClaimed(int slot) {
+        return claims.isTaken(slot);
+    }
+
+    // Claims the unclaimed amount closest to target within tolerance and returns its slot,
+    // or -1 when there is none. Ties go to the lower amount.
+    public int claimNearest(long target, long tolerance) {
+        int from = lowerBound(target);
+        int above = claims.next(from);
+        int below = claims.previous(from - 1);
+        long aboveDiff = above < size ? amount(above) - target : Long.MAX_VALUE;
+        long belowDiff = below >= 0 ? target - amount(below) : Long.MAX_VALUE;
+        int best = belowDiff <= aboveDiff ? below : above;
+        if (best < 0 || best >= size || Math.min(aboveDiff, belowDiff) > tolerance) {
+            return -1;
+        }
+        claims.take(best);
+        claimed++;
+        return best;
+    }
+
+    // First slot whose amount is >= key
+    private int lowerBound(long key) {
+        int lo = 0, hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (amount(mid) < key) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private static int checkLength(long[] amounts, int[] ids) {
+        if (amounts.length != ids.length) {
+            throw new IllegalArgumentException("ids and amounts differ in length: " + ids.length + " vs " + amounts.length);
+        }
+        return amounts.length;
+    }
+
+    private static LongBuffer[] segments(long[] column) {
+        LongBuffer[] segments = new LongBuffer[segmentCount(column.length)];
+        for (int s = 0; s < segments.length; s++) {
+            segments[s] = LongBuffer.wrap(column, s << SEGMENT_SHIFT, rowsInSegment(column.length, s)).slice();
+        }
+        return segments;
+    }
+
+    private static IntBuffer[] segments(int[] column) {
+        IntBuffer[] segments = new IntBuffer[segmentCount(column.length)];
+        for (int s = 0; s < segments.length; s++) {
+            segments[s] = IntBuffer.wrap(column, s << SEGMENT_SHIFT, rowsInSegment(column.length, s)).slice();
+        }
+        return segments;
+    }
+
+    private static int segmentCount(int rows) {
+        return Math.max(1, (rows + OffHeapSide.SEGMENT_ROWS - 1) >>> SEGMENT_SHIFT);
+    }
+
+    private static int rowsInSegment(int rows, int segment) {
+        return Math.min(OffHeapSide.SEGMENT_ROWS, rows - (segment << SEGMENT_SHIFT));
+    }
+}
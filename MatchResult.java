@@ -0,0 +1,243 @@
+package com.example.reconciliation;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+// MatchSink that keeps every outcome in growable primitive columns. Text in the usual
+// "Side1: id (amount) <-> Side2: id (amount)" form is only produced by line(i), so a run
+// that just counts or persists its results never builds a string.
+//
+// Near misses are suggestions, not outcomes: they are kept in columns of their own, each
+// pointing at the unmatched row it follows, so rows, size() and asStrings() hold exactly
+// one entry per outcome. replay sends them back after their row.
+final class MatchResult implements MatchSink {
+
+    static final byte PAIR = 0;
+    static final byte UNMATCHED_SIDE1 = 1;
+    static final byte UNMATCHED_SIDE2 = 2;
+    static final byte GROUP = 3;
+
+    private int scale = -1;
+    private int size;
+    private int matched;
+    private byte[] kinds = new byte[16];
+    private int[] ids1 = new int[16];
+    private long[] amounts1 = new long[16];
+    private int[] ids2 = new int[16];
+    private long[] amounts2 = new long[16];
+    // Group members, Side1 members first: a GROUP row stores the offset of its members in
+    // ids1, the number of Side1 members in ids2 and the total number of members in amounts1
+    private int[] memberIds = new int[0];
+    private long[] memberAmounts = new long[0];
+    private int members;
+    // Near miss n follows row nearRows[n]
+    private int[] nearRows = new int[0];
+    private int[] nearIds1 = new int[0];
+    private long[] nearAmounts1 = new long[0];
+    private int[] nearIds2 = new int[0];
+    private long[] nearAmounts2 = new long[0];
+    private int nearMisses;
+
+    @Override
+    public void begin(int scale) {
+        FixedPoint.checkScale(scale);
+        if (this.scale >= 0 && this.scale != scale) {
+            throw new IllegalStateException("Result already holds amounts at scale " + this.scale + ", not " + scale);
+        }
+        this.scale = scale;
+    }
+
+    @Override
+    public void matchedPair(int id1, long amount1, int id2, long amount2) {
+        add(PAIR, id1, amount1, id2, amount2);
+        matched++;
+    }
+
+    @Override
+    public void unmatchedSide1(int id, long amount) {
+        add(UNMATCHED_SIDE1, id, amount, 0, 0);
+    }
+
+    @Override
+    public void nearMiss(int id1, long amount1, int id2, long amount2) {
+        if (nearMisses == nearRows.length) {
+            int capacity = nearMisses + (nearMisses >> 1) + 16;
+            nearRows = Arrays.copyOf(nearRows, capacity);
+            nearIds1 = Arrays.copyOf(nearIds1, capacity);
+            nearAmounts1 = Arrays.copyOf(nearAmounts1, capacity);
+            nearIds2 = Arrays.copyOf(nearIds2, capacity);
+            nearAmounts2 = Arrays.copyOf(nearAmounts2, capacity);
+        }
+        nearRows[nearMisses] = size - 1;
+        nearIds1[nearMisses] = id1;
+        nearAmounts1[nearMisses] = amount1;
+        nearIds2[nearMisses] = id2;
+        nearAmounts2[nearMisses] = amount2;
+        nearMisses++;
+    }
+
+    @Override
+    public void unmatchedSide2(int id, long amount) {
+        add(UNMATCHED_SIDE2, 0, 0, id, amount);
+    }
+
+    @Override
+    public void matchedGroup(int[] ids1, long[] amounts1, int[] ids2, long[] amounts2) {
+        int count = ids1.length + ids2.length;
+        if (members + count > memberIds.length) {
+            int capacity = Math.max(members + count, memberIds.length + (memberIds.length >> 1) + 16);
+            memberIds = Arrays.copyOf(memberIds, capacity);
+            memberAmounts = Arrays.copyOf(memberAmounts, capacity);
+        }
+        add(GROUP, members, count, ids1.length, 0);
+        System.arraycopy(ids1, 0, memberIds, members, ids1.length);
+        System.arraycopy(amounts1, 0, memberAmounts, members, ids1.length);
+        System.arraycopy(ids2, 0, memberIds, members + ids1.length, ids2.length);
+        System.arraycopy(amounts2, 0, memberAmounts, members + ids1.length, ids2.length);
+        members += count;
+        matched++;
+    }
+
+    private void add(byte kind, int id1, long amount1, int id2, long amount2) {
+        if (size == kinds.length) {
+            int capacity = size + (size >> 1);
+            kinds = Arrays.copyOf(kinds, capacity);
+            ids1 = Arrays.copyOf(ids1, capacity);
+            amounts1 = Arrays.copyOf(amounts1, capacity);
+            ids2 = Arrays.copyOf(ids2, capacity);
+            amounts2 = Arrays.copyOf(amounts2, capacity);
+        }
+        kinds[size] = kind;
+        ids1[size] = id1;
+        amounts1[size] = amount1;
+        ids2[size] = id2;
+        amounts2[size] = amount2;
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Rows that settled something: pairs and groups
+    public int matched() {
+        return matched;
+    }
+
+    public int scale() {
+        return scale;
+    }
+
+    public byte kind(int row) {
+        return kinds[row];
+    }
+
+    public int id1(int row) {
+        return ids1[row];
+    }
+
+    public long amount1(int row) {
+        return amounts1[row];
+    }
+
+    public int id2(int row) {
+        return ids2[row];
+    }
+
+    public long amount2(int row) {
+        return amounts2[row];
+    }
+
+    public int nearMisses() {
+        return nearMisses;
+    }
+
+    // Row of the unmatched record near miss n was suggested for
+    public int nearMissRow(int n) {
+        return nearRows[n];
+    }
+
+    // Sends every outcome, in order, to another sink
+    public void replay(MatchSink sink) {
+        int n = 0;
+        for (int r = 0; r < size; r++) {
+            switch (kinds[r]) {
+                case PAIR:
+                    sink.matchedPair(ids1[r], amounts1[r], ids2[r], amounts2[r]);
+                    break;
+                case UNMATCHED_SIDE1:
+                    sink.unmatchedSide1(ids1[r], amounts1[r]);
+                    break;
+                case UNMATCHED_SIDE2:
+                    sink.unmatchedSide2(ids2[r], amounts2[r]);
+                    break;
+                default:
+                    int from = ids1[r];
+                    int split = from + ids2[r];
+                    int to = from + (int) amounts1[r];
+                    sink.matchedGroup(Arrays.copyOfRange(memberIds, from, split), Arrays.copyOfRange(memberAmounts, from, split),
+                            Arrays.copyOfRange(memberIds, split, to), Arrays.copyOfRange(memberAmounts, split, to));
+            }
+            for (; n < nearMisses && nearRows[n] <= r; n++) {
+                sink.nearMiss(nearIds1[n], nearAmounts1[n], nearIds2[n], nearAmounts2[n]);
+            }
+        }
+    }
+
+    public String line(int row) {
+        switch (kinds[row]) {
+            case PAIR:
+                return "Side1: " + ids1[row] + " (" + FixedPoint.toDouble(amounts1[row], scale) + ") <-> Side2: " + ids2[row] + " (" + FixedPoint.toDouble(amounts2[row], scale) + ")";
+            case UNMATCHED_SIDE1:
+                return "Side1: " + ids1[row] + " (" + FixedPoint.toDouble(amounts1[row], scale) + ") <-> No Match";
+            case UNMATCHED_SIDE2:
+                return "Side2: " + ids2[row] + " (" + FixedPoint.toDouble(amounts2[row], scale) + ") <-> No Match";
+            default:
+                int from = ids1[row];
+                int split = from + ids2[row];
+                int to = from + (int) amounts1[row];
+                StringBuilder sb = new StringBuilder("Side1: ");
+                appendMembers(sb, from, split);
+                sb.append(" <-> Side2: ");
+                appendMembers(sb, split, to);
+                return sb.toString();
+        }
+    }
+
+    // "Side1: id (amount) ~ Near Miss: Side2: id (amount)", sides swapped for a suggestion
+    // made to an unmatched Side2 record
+    public String nearMissLine(int n) {
+        String side1 = "Side1: " + nearIds1[n] + " (" + FixedPoint.toDouble(nearAmounts1[n], scale) + ")";
+        String side2 = "Side2: " + nearIds2[n] + " (" + FixedPoint.toDouble(nearAmounts2[n], scale) + ")";
+        boolean ofSide2 = nearRows[n] >= 0 && kinds[nearRows[n]] == UNMATCHED_SIDE2;
+        return ofSide2 ? side2 + " ~ Near Miss: " + side1 : side1 + " ~ Near Miss: " + side2;
+    }
+
+    private void appendMembers(StringBuilder sb, int from, int to) {
+        for (int m = from; m < to; m++) {
+            if (m > from) {
+                sb.append(" + ");
+            }
+            sb.append(memberIds[m]).append(" (").append(FixedPoint.toDouble(memberAmounts[m], scale)).append(")");
+        }
+    }
+
+    // Read-only view that formats each line when it is read
+    public List<String> asStrings() {
+        return new AbstractList<String>() {
+            @Override
+            public String get(int index) {
+                if (index < 0 || index >= size) {
+                    throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size);
+                }
+                return line(index);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+}
@@ -0,0 +1,26 @@
+package com.example.reconciliation;
+
+// Receiver of reconciliation outcomes as primitive events. Amounts are minor units at the
+// scale announced through begin, which engines call once before the first event, so no
+// text is built unless the sink itself decides to format.
+interface MatchSink {
+
+    default void begin(int scale) {
+    }
+
+    void matchedPair(int id1, long amount1, int id2, long amount2);
+
+    void unmatchedSide1(int id, long amount);
+
+    // A pair outside variance but close, for manual follow-up of the record just reported
+    // unmatched: engines that suggest send these nearest first, right after the
+    // unmatchedSide1 or unmatchedSide2 event they belong to. The other record of the pair
+    // is itself unmatched and reported on its own.
+    default void nearMiss(int id1, long amount1, int id2, long amount2) {
+    }
+
+    void unmatchedSide2(int id, long amount);
+
+    // Several records on one or both sides settling each other (aggregate matching)
+    void matchedGroup(int[] ids1, long[] amounts1, int[] ids2, long[] amounts2);
+}
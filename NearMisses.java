@@ -0,0 +1,186 @@
+package com.example.reconciliation;
+
+import java.util.Arrays;
+
+// Top-K near-miss suggestions for the unmatched records of both sides of a sort-merge
+// sweep: for every unmatched Side1 record the k nearest Side2 amounts that stay unclaimed,
+// and for every unclaimed Side2 record the k nearest unmatched Side1 amounts, up to
+// maxDistance away, collected while the sweep runs instead of by a search after it.
+//
+// The sweep decides both sides in ascending amount order. A Side2 slot is final once the
+// cursor skips it (unclaimed) or takes it (claimed), and the slots left after the last
+// Side1 record are unclaimed too. Every (unmatched, unclaimed) pair is offered exactly once,
+// by whichever of the two is decided second, to the heaps of both: a new unmatched record
+// looks back over the unclaimed slots still within reach, a new unclaimed slot over the
+// unmatched records still within reach.
+//
+// Each decided record owns a bounded max-heap of k (distance, slot) entries in flat
+// primitive arrays that grow geometrically; the root is the worst suggestion kept. Ties in
+// distance go to the lower slot, so the result does not depend on offer order.
+final class NearMisses {
+
+    private final long maxDistance;
+    // One heap per unmatched Side1 slot and per unclaimed Side2 slot, both in the ascending
+    // order the sweep decides them; the suggestions of side1 heaps are Side2 slots and the
+    // other way round
+    final Heaps side1;
+    final Heaps side2;
+    // First heap of each side that can still receive a candidate
+    private int pending1;
+    private int pending2;
+
+    NearMisses(int k, long maxDistance) {
+        if (k < 1) {
+            throw new IllegalArgumentException("k must be positive: " + k);
+        }
+        if (maxDistance < 0) {
+            throw new IllegalArgumentException("maxDistance must not be negative: " + maxDistance);
+        }
+        this.maxDistance = maxDistance;
+        this.side1 = new Heaps(k);
+        this.side2 = new Heaps(k);
+    }
+
+    // Side1 slot decided unmatched; slots are reported in ascending amount order
+    void unmatched(int slot1, long amount) {
+        pending2 = pair(side1.add(slot1, amount), amount, side1, side2, pending2);
+    }
+
+    // Side2 slot that will stay unclaimed; slots are reported in ascending amount order
+    void unclaimed(int slot2, long amount) {
+        pending1 = pair(side2.add(slot2, amount), amount, side2, side1, pending1);
+    }
+
+    // Offers the new heap h of mine and every heap of other within reach to each other;
+    // every heap of other lies below amount. Returns the new first heap within reach.
+    private int pair(int h, long amount, Heaps mine, Heaps other, int pending) {
+        while (pending < other.size && amount - other.ownerAmounts[pending] > maxDistance) {
+            pending++;
+        }
+        for (int o = pending; o < other.size; o++) {
+            long distance = amount - other.ownerAmounts[o];
+            mine.offer(h, distance, other.owners[o]);
+            other.offer(o, distance, mine.owners[h]);
+        }
+        return pending;
+    }
+
+    // Sorts every heap nearest first; call once after the sweep
+    void finish() {
+        side1.finish();
+        side2.finish();
+    }
+
+    static final class Heaps {
+        private final int k;
+        // Heap h covers [h * k, h * k + counts[h]) of distances and slots
+        private long[] distances;
+        private int[] slots;
+        private int[] counts;
+        private int[] owners;
+        private long[] ownerAmounts;
+        private int size;
+
+        private Heaps(int k) {
+            this.k = k;
+            this.distances = new long[16 * k];
+            this.slots = new int[16 * k];
+            this.counts = new int[16];
+            this.owners = new int[16];
+            this.ownerAmounts = new long[16];
+        }
+
+        private int add(int owner, long amount) {
+            if (size == counts.length) {
+                int capacity = size + (size >> 1);
+                counts = Arrays.copyOf(counts, capacity);
+                owners = Arrays.copyOf(owners, capacity);
+                ownerAmounts = Arrays.copyOf(ownerAmounts, capacity);
+                distances = Arrays.copyOf(distances, capacity * k);
+                slots = Arrays.copyOf(slots, capacity * k);
+            }
+            counts[size] = 0;
+            owners[size] = owner;
+            ownerAmounts[size] = amount;
+            return size++;
+        }
+
+        // Keeps (distance, slot) in heap h if it is among the k nearest offered so far
+        private void offer(int h, long distance, int slot) {
+            int base = h * k;
+            int n = counts[h];
+            if (n < k) {
+                // Sift up
+                int i = n;
+                while (i > 0) {
+                    int parent = (i - 1) >> 1;
+                    if (!worse(distance, slot, distances[base + parent], slots[base + parent])) {
+                        break;
+                    }
+                    distances[base + i] = distances[base + parent];
+                    slots[base + i] = slots[base + parent];
+                    i = parent;
+                }
+                distances[base + i] = distance;
+                slots[base + i] = slot;
+                counts[h] = n + 1;
+            } else if (worse(distances[base], slots[base], distance, slot)) {
+                siftDown(base, n, distance, slot);
+            }
+        }
+
+        // Places (distance, slot) at the root of the heap at base of size n and sifts it down
+        private void siftDown(int base, int n, long distance, int slot) {
+            int i = 0;
+            int child;
+            while ((child = 2 * i + 1) < n) {
+                if (child + 1 < n && worse(distances[base + child + 1], slots[base + child + 1], distances[base + child], slots[base + child])) {
+                    child++;
+                }
+                if (!worse(distances[base + child], slots[base + child], distance, slot)) {
+                    break;
+                }
+                distances[base + i] = distances[base + child];
+                slots[base + i] = slots[base + child];
+                i = child;
+            }
+            distances[base + i] = distance;
+            slots[base + i] = slot;
+        }
+
+        private static boolean worse(long distance, int slot, long otherDistance, int otherSlot) {
+            return distance > otherDistance || distance == otherDistance && slot > otherSlot;
+        }
+
+        private void finish() {
+            for (int h = 0; h < size; h++) {
+                int base = h * k;
+                for (int n = counts[h] - 1; n > 0; n--) {
+                    long distance = distances[base + n];
+                    int slot = slots[base + n];
+                    distances[base + n] = distances[base];
+                    slots[base + n] = slots[base];
+                    siftDown(base, n, distance, slot);
+                }
+            }
+        }
+
+        int size() {
+            return size;
+        }
+
+        // Slot heap h belongs to
+        int owner(int h) {
+            return owners[h];
+        }
+
+        int count(int h) {
+            return counts[h];
+        }
+
+        // Slot on the other side of the rank-th nearest suggestion of heap h, after finish
+        int slot(int h, int rank) {
+            return slots[h * k + rank];
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.reconciliation;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// JMH harness for OffHeapReconciler on sides that are never on the heap. setUp writes the
+// generated sides as "id,amount" files; one operation loads both with OffHeapSide.load
+// into direct buffers and sweeps them with reconcile(OffHeapSide, OffHeapSide, variance).
+// The OFF_HEAP engine of ReconcilerJmhBenchmark goes through the Reconciler interface and
+// copies RecordBatch columns off heap instead. Compare the two with the gc profiler:
+//
+//   java -jar target/benchmarks.jar OffHeapJmhBenchmark -prof gc
+//
+// The heap only sees the lines being parsed, so the small heap of the forks is enough.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+@Fork(value = 2, jvmArgsAppend = {"-Xms256m", "-Xmx256m"})
+public class OffHeapJmhBenchmark {
+
+    private static final OffHeapReconciler RECONCILER = new OffHeapReconciler();
+
+    @Param({"100000"})
+    public int records;
+
+    @Param({"1.5"})
+    public double variance;
+
+    @Param({"0.3"})
+    public double duplicateRatio;
+
+    @Param({"UNIFORM", "ZIPF"})
+    public DatasetGenerator.Distribution distribution;
+
+    private Path dir;
+    private Path side1;
+    private Path side2;
+    private int scale;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        DatasetGenerator generator = new DatasetGenerator()
+                .seed(42)
+                .records(records)
+                .distribution(distribution)
+                .duplicateClusterRate(duplicateRatio)
+                .variance(variance);
+        if (distribution == DatasetGenerator.Distribution.ZIPF) {
+            generator.zipf(1.1, 10_000, 0.3);
+        }
+        DatasetGenerator.Dataset dataset = generator.generate();
+        scale = Math.max(dataset.side1.scale, dataset.side2.scale);
+        dir = Files.createTempDirectory("offheap-jmh-");
+        side1 = write(dir.resolve("side1.csv"), dataset.side1);
+        side2 = write(dir.resolve("side2.csv"), dataset.side2);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(side1);
+        Files.deleteIfExists(side2);
+        Files.deleteIfExists(dir);
+    }
+
+    // Returns the pair count, so the sweep cannot be eliminated
+    @Benchmark
+    public long reconcile() throws IOException {
+        try (OffHeapSide s1 = OffHeapSide.load(side1, scale);
+             OffHeapSide s2 = OffHeapSide.load(side2, scale)) {
+            return RECONCILER.reconcile(s1, s2, variance);
+        }
+    }
+
+    private static Path write(Path file, RecordBatch side) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            for (int i = 0; i < side.size; i++) {
+                writer.write(side.ids[i] + "," + FixedPoint.format(side.amounts[i], side.scale));
+                writer.newLine();
+            }
+        }
+        return file;
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.reconciliation;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+
+// Sort-merge sweep that runs directly on off-heap sides: both sides are sorted in place
+// and the match partner of every row is written back into the side's partner column.
+// Heap usage stays constant no matter how many rows the sides hold only on
+// reconcile(OffHeapSide, OffHeapSide, ...) with sides loaded by OffHeapSide.load (or
+// create / open for file-backed ones); see OffHeapJmhBenchmark. The Reconciler methods
+// copy RecordBatch columns off heap first, so their inputs stay on the heap as well.
+//
+// sortByAmount reorders the sides themselves, so after a sweep row i of a side is its
+// i-th smallest amount, not its i-th input row. The sink therefore gets Side1 outcomes in
+// ascending amount order (ties in no particular order), then the unmatched Side2 rows in
+// ascending amount order, not in input order as the heap engines emit them.
+public class OffHeapReconciler implements Reconciler {
+
+    @Override
+    public List<String> reconcile(List<Record> side1, List<Record> side2, double variance) {
+        return reconcile(RecordBatch.of(side1), RecordBatch.of(side2), variance);
+    }
+
+    @Override
+    public List<String> reconcile(RecordBatch side1, RecordBatch side2, double variance) {
+        MatchResult result = new MatchResult();
+        reconcile(side1, side2, variance, result);
+        return result.asStrings();
+    }
+
+    @Override
+    public void reconcile(RecordBatch side1, RecordBatch side2, double variance, MatchSink sink) {
+        int scale = Math.max(side1.scale, side2.scale);
+        try (OffHeapSide s1 = OffHeapSide.of(side1, scale);
+             OffHeapSide s2 = OffHeapSide.of(side2, scale)) {
+            reconcile(s1, s2, variance);
+
+            sink.begin(scale);
+            for (int i = 0; i < s1.size; i++) {
+                int m = s1.partner(i);
+                if (m >= 0) {
+                    sink.matchedPair(s1.id(i), s1.amount(i), s2.id(m), s2.amount(m));
+                } else {
+                    sink.unmatchedSide1(s1.id(i), s1.amount(i));
+                }
+            }
+            for (int k = 0; k < s2.size; k++) {
+                if (s2.partner(k) < 0) {
+                    sink.unmatchedSide2(s2.id(k), s2.amount(k));
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Returns the number of matched pairs; partners are left in the sides' partner columns.
+    // Partners of an earlier run (a side reopened from its file) are cleared first.
+    public long reconcile(OffHeapSide side1, OffHeapSide side2, double variance) {
+        if (side1.scale != side2.scale) {
+            throw new IllegalArgumentException("Both sides must use the same scale: " + side1.scale + " vs " + side2.scale);
+        }
+        long tolerance = FixedPoint.toleranceToMinor(variance, side1.scale);
+
+        side1.sortByAmount();
+        side2.sortByAmount();
+        side1.clearPartners();
+        side2.clearPartners();
+
+        long matches = 0;
+        int j = 0;
+        for (int i = 0; i < side1.size; i++) {
+            long a = side1.amount(i);
+            while (j < side2.size && a - side2.amount(j) > tolerance) {
+                j++;
+            }
+            if (j < side2.size && side2.amount(j) - a <= tolerance) {
+                side1.setPartner(i, j);
+                side2.setPartner(j, i);
+                j++;
+                matches++;
+            }
+        }
+        return matches;
+    }
+}
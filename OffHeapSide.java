@@ -0,0 +1,340 @@
+package com.example.reconciliation;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+// One reconciliation side stored outside the Java heap: amount (minor units), id and
+// match partner columns live in direct or memory-mapped buffers, so a 120M row side
+// costs the collector a handful of buffer objects instead of 120M Records.
+// Columns are split into segments of SEGMENT_ROWS rows because a single NIO buffer is
+// limited to 2 GB.
+//
+// Sides are filled straight from their source without a heap copy in between: from a
+// JDBC ResultSet, a CSV file or a RecordBatch (rescaled on the way in), see Loader.
+//
+// File layout (little endian): int magic, int scale, long rows, then the amount column
+// (8 bytes/row), the id column (4 bytes/row) and the partner column (4 bytes/row).
+final class OffHeapSide implements Closeable {
+
+    static final int SEGMENT_SHIFT = 26;
+    static final int SEGMENT_ROWS = 1 << SEGMENT_SHIFT;
+    private static final int SEGMENT_MASK = SEGMENT_ROWS - 1;
+
+    private static final int MAGIC = 0x52454331;
+    private static final int HEADER_BYTES = 16;
+
+    final int size;
+    final int scale;
+    private final LongBuffer[] amounts;
+    private final IntBuffer[] ids;
+    // partner row + 1 in the other side's sorted order, 0 while unmatched, so freshly
+    // allocated (zeroed) memory needs no initialisation pass
+    private final IntBuffer[] partners;
+    private final FileChannel channel;
+
+    private OffHeapSide(int size, int scale, LongBuffer[] amounts, IntBuffer[] ids, IntBuffer[] partners, FileChannel channel) {
+        this.size = size;
+        this.scale = scale;
+        this.amounts = amounts;
+        this.ids = ids;
+        this.partners = partners;
+        this.channel = channel;
+    }
+
+    public static OffHeapSide allocate(int rows, int scale) {
+        int segments = segmentCount(rows);
+        LongBuffer[] amounts = new LongBuffer[segments];
+        IntBuffer[] ids = new IntBuffer[segments];
+        IntBuffer[] partners = new IntBuffer[segments];
+        for (int s = 0; s < segments; s++) {
+            int n = rowsInSegment(rows, s);
+            amounts[s] = ByteBuffer.allocateDirect(n * 8).order(ByteOrder.nativeOrder()).asLongBuffer();
+            ids[s] = ByteBuffer.allocateDirect(n * 4).order(ByteOrder.nativeOrder()).asIntBuffer();
+            partners[s] = ByteBuffer.allocateDirect(n * 4).order(ByteOrder.nativeOrder()).asIntBuffer();
+        }
+        return new OffHeapSide(rows, scale, amounts, ids, partners, null);
+    }
+
+    // File-backed side; pages are paged in and out by the OS instead of living in RAM
+    public static OffHeapSide create(Path file, int rows, int scale) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(scale).putLong(rows).flip();
+        channel.write(header, 0);
+        return map(channel, rows, scale);
+    }
+
+    public static OffHeapSide open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        channel.read(header, 0);
+        header.flip();
+        if (header.remaining() < HEADER_BYTES || header.getInt() != MAGIC) {
+            channel.close();
+            throw new IOException("Not an off-heap side file: " + file);
+        }
+        int scale = header.getInt();
+        long rows = header.getLong();
+        return map(channel, Math.toIntExact(rows), scale);
+    }
+
+    private static OffHeapSide map(FileChannel channel, int rows, int scale) throws IOException {
+        long amountBase = HEADER_BYTES;
+        long idBase = amountBase + (long) rows * 8;
+        long partnerBase = idBase + (long) rows * 4;
+
+        int segments = segmentCount(rows);
+        LongBuffer[] amounts = new LongBuffer[segments];
+        IntBuffer[] ids = new IntBuffer[segments];
+        IntBuffer[] partners = new IntBuffer[segments];
+        for (int s = 0; s < segments; s++) {
+            long first = (long) s * SEGMENT_ROWS;
+            int n = rowsInSegment(rows, s);
+            amounts[s] = channel.map(FileChannel.MapMode.READ_WRITE, amountBase + first * 8, (long) n * 8)
+                    .order(ByteOrder.LITTLE_ENDIAN).asLongBuffer();
+            ids[s] = channel.map(FileChannel.MapMode.READ_WRITE, idBase + first * 4, (long) n * 4)
+                    .order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+            partners[s] = channel.map(FileChannel.MapMode.READ_WRITE, partnerBase + first * 4, (long) n * 4)
+                    .order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+        }
+        return new OffHeapSide(rows, scale, amounts, ids, partners, channel);
+    }
+
+    public static OffHeapSide of(RecordBatch batch) {
+        return of(batch, batch.scale);
+    }
+
+    // The batch's rows at a scale >= its own, rescaled row by row instead of through a
+    // rescaled heap copy of the batch
+    public static OffHeapSide of(RecordBatch batch, int scale) {
+        FixedPoint.checkScale(scale);
+        OffHeapSide side = allocate(batch.size, scale);
+        for (int i = 0; i < batch.size; i++) {
+            side.set(i, batch.ids[i], FixedPoint.rescale(batch.amounts[i], batch.scale, scale));
+        }
+        return side;
+    }
+
+    // (id, amount in minor units at scale) rows, as RecordBatchRowCallbackHandler.selectSql
+    // returns them; reads the result set to its end
+    public static OffHeapSide load(ResultSet rs, int scale) throws SQLException {
+        Loader loader = new Loader(scale);
+        while (rs.next()) {
+            loader.add(rs.getInt(1), rs.getLong(2));
+        }
+        return loader.finish();
+    }
+
+    // One "id,amount" line per row with a decimal amount, e.g. "17,1234.50"
+    public static OffHeapSide load(Path csv, int scale) throws IOException {
+        Loader loader = new Loader(scale);
+        try (BufferedReader reader = Files.newBufferedReader(csv, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                int comma = line.indexOf(',');
+                if (comma < 0) {
+                    throw new IOException("Expected id,amount in " + csv + ": " + line);
+                }
+                loader.add(Integer.parseInt(line.substring(0, comma).trim()), FixedPoint.parse(line.substring(comma + 1).trim(), scale));
+            }
+        }
+        return loader.finish();
+    }
+
+    private static int segmentCount(int rows) {
+        return Math.max(1, (rows + SEGMENT_ROWS - 1) >>> SEGMENT_SHIFT);
+    }
+
+    private static int rowsInSegment(int rows, int segment) {
+        return Math.min(SEGMENT_ROWS, rows - segment * SEGMENT_ROWS);
+    }
+
+    public void set(int row, int id, long amount) {
+        amounts[row >>> SEGMENT_SHIFT].put(row & SEGMENT_MASK, amount);
+        ids[row >>> SEGMENT_SHIFT].put(row & SEGMENT_MASK, id);
+    }
+
+    public long amount(int row) {
+        return amounts[row >>> SEGMENT_SHIFT].get(row & SEGMENT_MASK);
+    }
+
+    public int id(int row) {
+        return ids[row >>> SEGMENT_SHIFT].get(row & SEGMENT_MASK);
+    }
+
+    public double amountAsDouble(int row) {
+        return FixedPoint.toDouble(amount(row), scale);
+    }
+
+    // Row of the matched record on the other side, or -1
+    public int partner(int row) {
+        return partners[row >>> SEGMENT_SHIFT].get(row & SEGMENT_MASK) - 1;
+    }
+
+    public void setPartner(int row, int partner) {
+        partners[row >>> SEGMENT_SHIFT].put(row & SEGMENT_MASK, partner + 1);
+    }
+
+    // Marks every row unmatched, e.g. before reconciling a side opened from a file again
+    public void clearPartners() {
+        for (IntBuffer segment : partners) {
+            for (int r = 0; r < segment.limit(); r++) {
+                segment.put(r, 0);
+            }
+        }
+    }
+
+    // In-place three-way quicksort of the rows by amount (ids travel along), falling
+    // back to heap sort past the depth limit. Partners set before are left stale.
+    public void sortByAmount() {
+        quickSort(0, size - 1, 2 * (32 - Integer.numberOfLeadingZeros(Math.max(1, size))));
+    }
+
+    private void quickSort(int lo, int hi, int depth) {
+        while (hi - lo >= 32) {
+            if (depth-- == 0) {
+                heapSort(lo, hi);
+                return;
+            }
+            long x = amount(lo), y = amount((lo + hi) >>> 1), z = amount(hi);
+            long pivot = x < y ? (y < z ? y : (x < z ? z : x)) : (x < z ? x : (y < z ? z : y));
+            int lt = lo, gt = hi, i = lo;
+            while (i <= gt) {
+                long k = amount(i);
+                if (k < pivot) {
+                    swap(lt++, i++);
+                } else if (k > pivot) {
+                    swap(i, gt--);
+                } else {
+                    i++;
+                }
+            }
+            if (lt - lo < hi - gt) {
+                quickSort(lo, lt - 1, depth);
+                lo = gt + 1;
+            } else {
+                quickSort(gt + 1, hi, depth);
+                hi = lt - 1;
+            }
+        }
+        for (int i = lo + 1; i <= hi; i++) {
+            for (int j = i; j > lo && amount(j - 1) > amount(j); j--) {
+                swap(j - 1, j);
+            }
+        }
+    }
+
+    private void heapSort(int lo, int hi) {
+        int n = hi - lo + 1;
+        for (int i = n / 2 - 1; i >= 0; i--) {
+            siftDown(lo, i, n);
+        }
+        for (int end = n - 1; end > 0; end--) {
+            swap(lo, lo + end);
+            siftDown(lo, 0, end);
+        }
+    }
+
+    private void siftDown(int lo, int i, int n) {
+        while (2 * i + 1 < n) {
+            int child = 2 * i + 1;
+            if (child + 1 < n && amount(lo + child + 1) > amount(lo + child)) {
+                child++;
+            }
+            if (amount(lo + i) >= amount(lo + child)) {
+                return;
+            }
+            swap(lo + i, lo + child);
+            i = child;
+        }
+    }
+
+    private void swap(int i, int j) {
+        long amount = amount(i);
+        int id = id(i);
+        set(i, id(j), amount(j));
+        set(j, id, amount);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+        }
+    }
+
+    // Appends rows of unknown count into direct segments that double in size up to
+    // SEGMENT_ROWS; growing copies off heap, so the heap only ever holds the segment list
+    static final class Loader {
+        private static final int INITIAL_ROWS = 1 << 16;
+
+        private final int scale;
+        private final List<LongBuffer> amounts = new ArrayList<>();
+        private final List<IntBuffer> ids = new ArrayList<>();
+        private int size;
+
+        Loader(int scale) {
+            FixedPoint.checkScale(scale);
+            this.scale = scale;
+        }
+
+        void add(int id, long amount) {
+            if (size == Integer.MAX_VALUE) {
+                throw new IllegalStateException("An off-heap side holds at most " + Integer.MAX_VALUE + " rows");
+            }
+            int segment = size >>> SEGMENT_SHIFT;
+            int row = size & SEGMENT_MASK;
+            if (segment == amounts.size()) {
+                amounts.add(longs(INITIAL_ROWS));
+                ids.add(ints(INITIAL_ROWS));
+            } else if (row == amounts.get(segment).capacity()) {
+                int capacity = Math.min(2 * row, SEGMENT_ROWS);
+                amounts.set(segment, longs(capacity).put(amounts.get(segment).clear()));
+                ids.set(segment, ints(capacity).put(ids.get(segment).clear()));
+            }
+            amounts.get(segment).put(row, amount);
+            ids.get(segment).put(row, id);
+            size++;
+        }
+
+        OffHeapSide finish() {
+            int segments = segmentCount(size);
+            LongBuffer[] amountColumns = new LongBuffer[segments];
+            IntBuffer[] idColumns = new IntBuffer[segments];
+            IntBuffer[] partnerColumns = new IntBuffer[segments];
+            for (int s = 0; s < segments; s++) {
+                int n = rowsInSegment(size, s);
+                amountColumns[s] = s < amounts.size() ? amounts.get(s).clear().limit(n).slice() : longs(0);
+                idColumns[s] = s < ids.size() ? ids.get(s).clear().limit(n).slice() : ints(0);
+                partnerColumns[s] = ints(n);
+            }
+            return new OffHeapSide(size, scale, amountColumns, idColumns, partnerColumns, null);
+        }
+
+        private static LongBuffer longs(int rows) {
+            return ByteBuffer.allocateDirect(rows * 8).order(ByteOrder.nativeOrder()).asLongBuffer();
+        }
+
+        private static IntBuffer ints(int rows) {
+            return ByteBuffer.allocateDirect(rows * 4).order(ByteOrder.nativeOrder()).asIntBuffer();
+        }
+    }
+}
@@ -0,0 +1,484 @@
+package com.example.reconciliation;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Unmatched items of one side carried from run to run, kept sorted by amount so the next
+// run can probe them by binary search instead of reloading and re-sorting the history.
+// Every item remembers the business date it was first seen on, which gives its age.
+//
+// The items live in a few sorted segments, oldest first, instead of one array. A run
+// closes the items it matches in place (FreeSlots skips them) and adds its own leftovers
+// as a new segment, so neither the history nor its file is rewritten every day. Segments
+// are merged size-tiered: while the newest has at least half as many open items as the one
+// before it, the two are merged and their closed items dropped. An item is copied
+// O(log n) times over its life and a probe visits O(log n) segments.
+//
+// Slots number the items of all segments in order, closed ones included; they stay valid
+// until the next open or save.
+//
+// File layout (little endian): int magic, int scale, long committed length, then records:
+//   SEGMENT: int tag, int id, int replaced count, the replaced segment ids, int rows, then
+//            the amount column (8 bytes/row), the id column (4 bytes/row) and the
+//            opened-on column (epoch day, 4 bytes/row)
+//   CLOSED:  int tag, int segment id, int count, the closed rows (4 bytes each)
+// save appends what changed since the load and only then moves the committed length in
+// the header, so a failed run leaves yesterday's index intact and bytes past it are
+// ignored. The file is rewritten (to a sibling, moved into place) only once more than half
+// of it describes merged-away segments and closed items.
+final class OpenItemsIndex {
+
+    private static final int MAGIC = 0x4F504E32;
+    private static final int HEADER_BYTES = 16;
+    private static final int CHUNK_BYTES = 1 << 20;
+    private static final int SEGMENT = 1;
+    private static final int CLOSED = 2;
+
+    // One sorted generation of open items
+    private static final class Segment {
+        final int id;
+        final long[] amounts;
+        final int[] ids;
+        final int[] openedOn;
+        final FreeSlots open;
+        // Ids of the segments in the file this one was merged from, written with it
+        final int[] replaces;
+        // Rows closed so far in closing order; the first savedClosed are in the file
+        int[] closed = new int[16];
+        int closedCount;
+        int savedClosed;
+        boolean saved;
+        // First slot of this segment
+        int offset;
+
+        Segment(int id, long[] amounts, int[] ids, int[] openedOn, int[] replaces) {
+            this.id = id;
+            this.amounts = amounts;
+            this.ids = ids;
+            this.openedOn = openedOn;
+            this.open = new FreeSlots(amounts.length);
+            this.replaces = replaces;
+        }
+
+        int rows() {
+            return amounts.length;
+        }
+
+        int live() {
+            return amounts.length - closedCount;
+        }
+
+        void close(int row) {
+            if (!open.claim(row)) {
+                throw new IllegalStateException("Open item " + ids[row] + " is already closed");
+            }
+            if (closedCount == closed.length) {
+                closed = Arrays.copyOf(closed, closedCount * 2);
+            }
+            closed[closedCount++] = row;
+        }
+
+        // Live rows only, as a new segment with no history in the file
+        Segment compact(int newId) {
+            long[] liveAmounts = new long[live()];
+            int[] liveIds = new int[liveAmounts.length];
+            int[] liveOpenedOn = new int[liveAmounts.length];
+            int n = 0;
+            for (int row = open.nextFree(0); row < rows(); row = open.nextFree(row + 1)) {
+                liveAmounts[n] = amounts[row];
+                liveIds[n] = ids[row];
+                liveOpenedOn[n++] = openedOn[row];
+            }
+            return new Segment(newId, liveAmounts, liveIds, liveOpenedOn, new int[0]);
+        }
+
+        // Bytes of this segment's records not yet in the file
+        long pendingBytes() {
+            long bytes = saved ? 0 : 16 + 4L * replaces.length + 16L * rows();
+            return closedCount > savedClosed ? bytes + 12 + 4L * (closedCount - savedClosed) : bytes;
+        }
+    }
+
+    final int scale;
+    private final List<Segment> segments;
+    private int nextId;
+    // Length of this index's file as of the load or last save; 0 when save must rewrite it
+    private long committed;
+
+    private OpenItemsIndex(List<Segment> segments, int nextId, long committed, int scale) {
+        FixedPoint.checkScale(scale);
+        this.segments = segments;
+        this.nextId = nextId;
+        this.committed = committed;
+        this.scale = scale;
+        renumber();
+    }
+
+    private void renumber() {
+        int offset = 0;
+        for (Segment segment : segments) {
+            segment.offset = offset;
+            offset += segment.rows();
+        }
+    }
+
+    public static OpenItemsIndex empty(int scale) {
+        return new OpenItemsIndex(new ArrayList<>(), 0, 0, scale);
+    }
+
+    // A missing file is an empty index, so the first run needs no special casing
+    public static OpenItemsIndex load(Path file, int scale) throws IOException {
+        if (!Files.exists(file)) {
+            return empty(scale);
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ChannelIO.buffer(CHUNK_BYTES);
+            ChannelIO.fill(channel, buffer, HEADER_BYTES, "Open-items index");
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("Not an open-items index: " + file);
+            }
+            int fileScale = buffer.getInt();
+            long committed = buffer.getLong();
+            Map<Integer, Segment> segments = new LinkedHashMap<>();
+            int nextId = 0;
+            for (long position = HEADER_BYTES; position < committed; ) {
+                int[] head = readInts(channel, buffer, 3);
+                if (head[0] == SEGMENT) {
+                    int[] replaces = readInts(channel, buffer, head[2]);
+                    int rows = readInts(channel, buffer, 1)[0];
+                    for (int replaced : replaces) {
+                        segments.remove(replaced);
+                    }
+                    segments.put(head[1], new Segment(head[1], readLongs(channel, buffer, rows), readInts(channel, buffer, rows),
+                            readInts(channel, buffer, rows), new int[0]));
+                    nextId = Math.max(nextId, head[1] + 1);
+                    position += 16 + 4L * replaces.length + 16L * rows;
+                } else if (head[0] == CLOSED && segments.containsKey(head[1])) {
+                    Segment segment = segments.get(head[1]);
+                    for (int row : readInts(channel, buffer, head[2])) {
+                        segment.close(row);
+                    }
+                    position += 12 + 4L * head[2];
+                } else {
+                    throw new IOException("Corrupt open-items index at byte " + position + ": " + file);
+                }
+            }
+            for (Segment segment : segments.values()) {
+                segment.saved = true;
+                segment.savedClosed = segment.closedCount;
+            }
+            return new OpenItemsIndex(new ArrayList<>(segments.values()), nextId, committed, fileScale).rescale(Math.max(fileScale, scale));
+        }
+    }
+
+    // Appends the changes to the file this index was loaded from or last saved to; any
+    // other file, a rescaled index or one mostly made of dead records is rewritten whole
+    public void save(Path file) throws IOException {
+        long pending = 0;
+        long compacted = HEADER_BYTES;
+        for (Segment segment : segments) {
+            pending += segment.pendingBytes();
+            compacted += 16 + 16L * segment.live();
+        }
+        if (committed > 0 && committed + pending <= 2 * compacted && committedLength(file) == committed) {
+            append(file);
+        } else {
+            rewrite(file);
+        }
+    }
+
+    private long committedLength(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return -1;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ChannelIO.buffer(HEADER_BYTES);
+            ChannelIO.fill(channel, header, HEADER_BYTES, "Open-items index");
+            return header.getInt() == MAGIC && header.getInt() == scale ? header.getLong() : -1;
+        }
+    }
+
+    private void append(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            channel.truncate(committed).position(committed);
+            ByteBuffer buffer = ChannelIO.buffer(CHUNK_BYTES);
+            for (Segment segment : segments) {
+                if (!segment.saved) {
+                    writeSegment(channel, buffer, segment);
+                }
+                if (segment.closedCount > segment.savedClosed) {
+                    writeInts(channel, buffer, new int[] {CLOSED, segment.id, segment.closedCount - segment.savedClosed});
+                    writeInts(channel, buffer, Arrays.copyOfRange(segment.closed, segment.savedClosed, segment.closedCount));
+                }
+            }
+            ChannelIO.drain(channel, buffer);
+            channel.force(false);
+            long length = channel.position();
+            // The new records only count once the header says so
+            buffer.putLong(length).flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer, 8 + buffer.position());
+            }
+            channel.force(false);
+            committed = length;
+        }
+        for (Segment segment : segments) {
+            segment.saved = true;
+            segment.savedClosed = segment.closedCount;
+        }
+    }
+
+    // Drops closed items and merge history and writes the segments to a sibling file that
+    // is moved into place
+    private void rewrite(Path file) throws IOException {
+        for (int s = 0; s < segments.size(); s++) {
+            segments.set(s, segments.get(s).compact(s));
+        }
+        nextId = segments.size();
+        renumber();
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        long length;
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ChannelIO.buffer(CHUNK_BYTES);
+            length = HEADER_BYTES;
+            for (Segment segment : segments) {
+                length += segment.pendingBytes();
+            }
+            buffer.putInt(MAGIC).putInt(scale).putLong(length);
+            for (Segment segment : segments) {
+                writeSegment(channel, buffer, segment);
+            }
+            ChannelIO.drain(channel, buffer);
+            channel.force(false);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        committed = length;
+        for (Segment segment : segments) {
+            segment.saved = true;
+        }
+    }
+
+    private static void writeSegment(FileChannel channel, ByteBuffer buffer, Segment segment) throws IOException {
+        writeInts(channel, buffer, new int[] {SEGMENT, segment.id, segment.replaces.length});
+        writeInts(channel, buffer, segment.replaces);
+        writeInts(channel, buffer, new int[] {segment.rows()});
+        writeLongs(channel, buffer, segment.amounts);
+        writeInts(channel, buffer, segment.ids);
+        writeInts(channel, buffer, segment.openedOn);
+    }
+
+    private static void writeLongs(FileChannel channel, ByteBuffer buffer, long[] values) throws IOException {
+        for (long value : values) {
+            if (buffer.remaining() < 8) {
+                ChannelIO.drain(channel, buffer);
+            }
+            buffer.putLong(value);
+        }
+    }
+
+    private static void writeInts(FileChannel channel, ByteBuffer buffer, int[] values) throws IOException {
+        for (int value : values) {
+            if (buffer.remaining() < 4) {
+                ChannelIO.drain(channel, buffer);
+            }
+            buffer.putInt(value);
+        }
+    }
+
+    private static long[] readLongs(FileChannel channel, ByteBuffer buffer, int rows) throws IOException {
+        long[] values = new long[rows];
+        for (int i = 0; i < rows; i++) {
+            if (buffer.remaining() < 8) {
+                ChannelIO.fill(channel, buffer, 8, "Open-items index");
+            }
+            values[i] = buffer.getLong();
+        }
+        return values;
+    }
+
+    private static int[] readInts(FileChannel channel, ByteBuffer buffer, int rows) throws IOException {
+        int[] values = new int[rows];
+        for (int i = 0; i < rows; i++) {
+            if (buffer.remaining() < 4) {
+                ChannelIO.fill(channel, buffer, 4, "Open-items index");
+            }
+            values[i] = buffer.getInt();
+        }
+        return values;
+    }
+
+    // A rescaled index has no file yet: its next save rewrites it
+    public OpenItemsIndex rescale(int newScale) {
+        if (newScale == scale) {
+            return this;
+        }
+        List<Segment> rescaled = new ArrayList<>();
+        for (Segment segment : segments) {
+            Segment live = segment.compact(rescaled.size());
+            for (int row = 0; row < live.rows(); row++) {
+                live.amounts[row] = FixedPoint.rescale(live.amounts[row], scale, newScale);
+            }
+            rescaled.add(live);
+        }
+        return new OpenItemsIndex(rescaled, rescaled.size(), 0, newScale);
+    }
+
+    // Closes the open item nearest to target within tolerance and returns its slot, or -1;
+    // ties go to the lower amount, then to the older item
+    public int closeNearest(long target, long tolerance) {
+        Segment best = null;
+        int bestRow = -1;
+        long bestDiff = Long.MAX_VALUE;
+        for (Segment segment : segments) {
+            int row = segment.open.nearest(segment.amounts, target, tolerance);
+            if (row >= 0) {
+                long diff = Math.abs(segment.amounts[row] - target);
+                if (diff < bestDiff || diff == bestDiff && segment.amounts[row] < best.amounts[bestRow]) {
+                    best = segment;
+                    bestRow = row;
+                    bestDiff = diff;
+                }
+            }
+        }
+        if (best == null) {
+            return -1;
+        }
+        best.close(bestRow);
+        return best.offset + bestRow;
+    }
+
+    // Adds items first seen on openedOn as the newest segment, then merges segments as
+    // described above; amounts must be ascending
+    public void open(long[] amounts, int[] ids, LocalDate openedOn) {
+        if (ids.length != amounts.length) {
+            throw new IllegalArgumentException("amounts and ids must have the same length");
+        }
+        if (amounts.length > 0) {
+            int[] days = new int[amounts.length];
+            Arrays.fill(days, Math.toIntExact(openedOn.toEpochDay()));
+            segments.add(new Segment(nextId++, amounts, ids, days, new int[0]));
+        }
+        while (segments.size() > 1) {
+            Segment newer = segments.get(segments.size() - 1);
+            Segment older = segments.get(segments.size() - 2);
+            if (newer.live() * 2L < older.live()) {
+                break;
+            }
+            segments.remove(segments.size() - 1);
+            segments.set(segments.size() - 1, merge(older, newer));
+        }
+        renumber();
+    }
+
+    // Linear merge of the live items of two adjacent segments, older first on equal amounts
+    private Segment merge(Segment older, Segment newer) {
+        int n = older.live() + newer.live();
+        long[] amounts = new long[n];
+        int[] ids = new int[n];
+        int[] openedOn = new int[n];
+        int i = older.open.nextFree(0);
+        int k = newer.open.nextFree(0);
+        for (int out = 0; out < n; out++) {
+            if (i < older.rows() && (k == newer.rows() || older.amounts[i] <= newer.amounts[k])) {
+                amounts[out] = older.amounts[i];
+                ids[out] = older.ids[i];
+                openedOn[out] = older.openedOn[i];
+                i = older.open.nextFree(i + 1);
+            } else {
+                amounts[out] = newer.amounts[k];
+                ids[out] = newer.ids[k];
+                openedOn[out] = newer.openedOn[k];
+                k = newer.open.nextFree(k + 1);
+            }
+        }
+        // Saved segments are replaced by id, unsaved ones pass on what they replace
+        int[] fromOlder = older.saved ? new int[] {older.id} : older.replaces;
+        int[] fromNewer = newer.saved ? new int[] {newer.id} : newer.replaces;
+        int[] replaces = Arrays.copyOf(fromOlder, fromOlder.length + fromNewer.length);
+        System.arraycopy(fromNewer, 0, replaces, fromOlder.length, fromNewer.length);
+        return new Segment(nextId++, amounts, ids, openedOn, replaces);
+    }
+
+    // Number of items still open
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.live();
+        }
+        return size;
+    }
+
+    // Number of slots, closed items included
+    public int slots() {
+        int slots = 0;
+        for (Segment segment : segments) {
+            slots += segment.rows();
+        }
+        return slots;
+    }
+
+    public boolean isOpen(int slot) {
+        Segment segment = segmentOf(slot);
+        return !segment.open.isClaimed(slot - segment.offset);
+    }
+
+    public long minorAmount(int slot) {
+        Segment segment = segmentOf(slot);
+        return segment.amounts[slot - segment.offset];
+    }
+
+    public double amount(int slot) {
+        return FixedPoint.toDouble(minorAmount(slot), scale);
+    }
+
+    public int id(int slot) {
+        Segment segment = segmentOf(slot);
+        return segment.ids[slot - segment.offset];
+    }
+
+    public LocalDate openedOn(int slot) {
+        Segment segment = segmentOf(slot);
+        return LocalDate.ofEpochDay(segment.openedOn[slot - segment.offset]);
+    }
+
+    public long ageInDays(int slot, LocalDate today) {
+        return today.toEpochDay() - openedOn(slot).toEpochDay();
+    }
+
+    private Segment segmentOf(int slot) {
+        for (int s = segments.size() - 1; s >= 0; s--) {
+            if (slot >= segments.get(s).offset) {
+                return segments.get(s);
+            }
+        }
+        throw new IndexOutOfBoundsException("Slot " + slot);
+    }
+
+    // Number of open items per age bucket: bucket k counts items younger than
+    // boundsInDays[k] days (and not younger than the previous bound), the last bucket the rest
+    public long[] agingHistogram(LocalDate today, int... boundsInDays) {
+        long[] histogram = new long[boundsInDays.length + 1];
+        for (Segment segment : segments) {
+            for (int row = segment.open.nextFree(0); row < segment.rows(); row = segment.open.nextFree(row + 1)) {
+                long age = today.toEpochDay() - segment.openedOn[row];
+                int bucket = 0;
+                while (bucket < boundsInDays.length && age >= boundsInDays[bucket]) {
+                    bucket++;
+                }
+                histogram[bucket]++;
+            }
+        }
+        return histogram;
+    }
+}
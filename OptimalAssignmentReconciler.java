@@ -0,0 +1,486 @@
+package com.example.reconciliation;
+
+import java.lang.System.Logger;
+import java.lang.System.Logger.Level;
+import java.util.Arrays;
+import java.util.List;
+
+// Globally optimal 1-D assignment: maximises the number of pairs within variance and,
+// among all maximum matchings, minimises the total absolute difference.
+//
+// On a line two crossing pairs (a1-b2, a2-b1 with a1 < a2, b1 < b2) can always be
+// uncrossed into a1-b1, a2-b2 without leaving the variance window or increasing the
+// total difference, so an optimal matching exists that preserves amount order on both
+// sides. That turns the problem into an alignment of the two sorted sides. The
+// alignment only has to be evaluated inside each Side1 amount's variance window, whose
+// bounds move monotonically with the sweep, and amounts separated by a gap wider than
+// variance are solved as independent clusters.
+// Cost: O(n log n) for the sort plus one step per (Side1, Side2) candidate pair inside
+// a window, which is what the TreeMap reconcilers already scan per record.
+//
+// Long runs of duplicate amounts make the windows quadratic. A cluster whose windows hold
+// more candidate pairs than CELLS_PER_RECORD per record is aligned run by run instead:
+// all pairs between a run of m equal Side1 amounts and a run of n equal Side2 amounts
+// gain the same, so the DP values leaving such a block (its bottom row and right column)
+// follow from those entering it in O(m + n) with a sliding-window maximum, and the
+// traceback recomputes the entry point of each block it crosses. Only the row of f above
+// each Side1 run is stored; the traceback sweeps a run's blocks again to recover their left
+// columns. Hot amounts then cost their run length per neighbouring run
+// rather than its square.
+//
+// Only a cluster too large even for that, or whose pair count and total difference
+// cannot be packed into one long, falls back to an order-preserving greedy sweep (each
+// Side1 amount takes the lowest free Side2 amount in its window): still the maximum number
+// of pairs, but not the minimum total difference. The fallback is logged as a warning.
+public class OptimalAssignmentReconciler implements Reconciler {
+
+    private static final Logger LOG = System.getLogger(OptimalAssignmentReconciler.class.getName());
+
+    private static final byte SKIP_SIDE1 = 0;
+    private static final byte SKIP_SIDE2 = 1;
+    private static final byte MATCH = 2;
+
+    private static final long CELLS_PER_RECORD = 256;
+    private static final long MAX_CELLS = 1 << 26;
+    private static final long BOUNDARY_PER_RECORD = 64;
+    private static final long MAX_BOUNDARY = 1 << 24;
+
+    @Override
+    public List<String> reconcile(List<Record> side1, List<Record> side2, double variance) {
+        return reconcile(RecordBatch.of(side1), RecordBatch.of(side2), variance);
+    }
+
+    @Override
+    public List<String> reconcile(RecordBatch side1, RecordBatch side2, double variance) {
+        MatchResult result = new MatchResult();
+        reconcile(side1, side2, variance, result);
+        return result.asStrings();
+    }
+
+    @Override
+    public void reconcile(RecordBatch side1, RecordBatch side2, double variance, MatchSink sink) {
+        int scale = Math.max(side1.scale, side2.scale);
+        RecordBatch s1 = side1.rescale(scale);
+        RecordBatch s2 = side2.rescale(scale);
+
+        int[] matchOf = assign(s1.amounts, s2.amounts, s1.tolerance(variance));
+
+        sink.begin(scale);
+        boolean[] matched2 = new boolean[s2.size];
+        for (int i = 0; i < s1.size; i++) {
+            int m = matchOf[i];
+            if (m >= 0) {
+                matched2[m] = true;
+                sink.matchedPair(s1.ids[i], s1.amounts[i], s2.ids[m], s2.amounts[m]);
+            } else {
+                sink.unmatchedSide1(s1.ids[i], s1.amounts[i]);
+            }
+        }
+        for (int k = 0; k < s2.size; k++) {
+            if (!matched2[k]) {
+                sink.unmatchedSide2(s2.ids[k], s2.amounts[k]);
+            }
+        }
+    }
+
+    // matchOf[side1 row] = side2 row, or -1
+    static int[] assign(long[] amounts1, long[] amounts2, long tolerance) {
+        int n1 = amounts1.length;
+        int n2 = amounts2.length;
+        long[] a = new long[n1];
+        long[] b = new long[n2];
+        int[] order1 = sortedOrder(amounts1, a);
+        int[] order2 = sortedOrder(amounts2, b);
+
+        int[] matchOf = new int[n1];
+        Arrays.fill(matchOf, -1);
+
+        // Split into clusters at gaps wider than tolerance; no pair can cross such a gap
+        int i = 0, j = 0;
+        while (i < n1 && j < n2) {
+            int i0 = i, j0 = j;
+            long reach = Math.min(a[i], b[j]);
+            while (true) {
+                if (i < n1 && a[i] <= reach + tolerance && (j >= n2 || a[i] <= b[j])) {
+                    reach = a[i++];
+                } else if (j < n2 && b[j] <= reach + tolerance) {
+                    reach = b[j++];
+                } else {
+                    break;
+                }
+            }
+            if (i > i0 && j > j0) {
+                solveCluster(a, b, i0, i, j0, j, tolerance, order1, order2, matchOf);
+            }
+        }
+        return matchOf;
+    }
+
+    private static int[] sortedOrder(long[] amounts, long[] sortedOut) {
+        int[] order = new int[amounts.length];
+        for (int k = 0; k < order.length; k++) {
+            order[k] = k;
+        }
+        System.arraycopy(amounts, 0, sortedOut, 0, amounts.length);
+        PrimitiveSort.sort(sortedOut, order);
+        return order;
+    }
+
+    // Alignment DP over a[i0..i1) x b[j0..j1). f(i, j) is the best (pairs, -difference) using
+    // the first i Side1 and first j Side2 amounts of the cluster, packed into one long with
+    // the pair count weighted above any possible total difference. Only the window
+    // lo(i) < j <= hi(i) of each row is computed: left of it f(i, j) = f(i - 1, j), right of
+    // it f(i, j) = f(i, hi(i)).
+    private static void solveCluster(long[] a, long[] b, int i0, int i1, int j0, int j1, long tolerance,
+                                     int[] order1, int[] order2, int[] matchOf) {
+        int rows = i1 - i0;
+        int cols = j1 - j0;
+        int pairs = Math.min(rows, cols);
+        // f never exceeds pairs * pairWeight = tolerance * pairs^2 + pairs
+        if (tolerance > (Long.MAX_VALUE / pairs - 1) / pairs) {
+            fallBack(a, b, i0, i1, j0, j1, tolerance, order1, order2, matchOf, "its total difference overflows a long");
+            return;
+        }
+        long pairWeight = tolerance * pairs + 1;
+
+        int[] lo = new int[rows + 1];
+        int[] hi = new int[rows + 1];
+        long cells = 0;
+        int l = 0, h = 0;
+        for (int r = 1; r <= rows; r++) {
+            long x = a[i0 + r - 1];
+            while (l < cols && x - b[j0 + l] > tolerance) {
+                l++;
+            }
+            h = Math.max(h, l);
+            while (h < cols && b[j0 + h] - x <= tolerance) {
+                h++;
+            }
+            lo[r] = l;
+            hi[r] = h;
+            cells += h - l;
+        }
+        if (cells > Math.min(MAX_CELLS, CELLS_PER_RECORD * (rows + cols))) {
+            if (!solveRuns(a, b, i0, i1, j0, j1, tolerance, pairWeight, order1, order2, matchOf)) {
+                fallBack(a, b, i0, i1, j0, j1, tolerance, order1, order2, matchOf, "its runs of equal amounts are too many");
+            }
+            return;
+        }
+
+        byte[] decision = new byte[(int) cells];
+        int[] rowStart = new int[rows + 1];
+        long[] f = new long[cols + 1];
+        int filled = 0;
+        int offset = 0;
+        for (int r = 1; r <= rows; r++) {
+            // Columns first reached by this row carry f(r - 1, j) = f(r - 1, filled)
+            for (int c = filled + 1; c <= hi[r]; c++) {
+                f[c] = f[filled];
+            }
+            filled = Math.max(filled, hi[r]);
+
+            rowStart[r] = offset - (lo[r] + 1);
+            long x = a[i0 + r - 1];
+            long diagonal = f[lo[r]];
+            long left = diagonal;
+            for (int c = lo[r] + 1; c <= hi[r]; c++) {
+                long up = f[c];
+                long best = up;
+                byte d = SKIP_SIDE1;
+                if (left > best) {
+                    best = left;
+                    d = SKIP_SIDE2;
+                }
+                long match = diagonal + pairWeight - Math.abs(x - b[j0 + c - 1]);
+                if (match > best) {
+                    best = match;
+                    d = MATCH;
+                }
+                decision[offset++] = d;
+                diagonal = up;
+                f[c] = best;
+                left = best;
+            }
+        }
+
+        int r = rows, c = cols;
+        while (r > 0 && c > 0) {
+            if (c > hi[r]) {
+                c = hi[r];
+            } else if (c <= lo[r]) {
+                r--;
+            } else {
+                byte d = decision[rowStart[r] + c];
+                if (d == MATCH) {
+                    matchOf[order1[i0 + r - 1]] = order2[j0 + c - 1];
+                    r--;
+                    c--;
+                } else if (d == SKIP_SIDE1) {
+                    r--;
+                } else {
+                    c--;
+                }
+            }
+        }
+    }
+
+    // The same alignment over runs of equal amounts, see RunAlignment. False when the
+    // stored boundaries would exceed the memory budget.
+    private static boolean solveRuns(long[] a, long[] b, int i0, int i1, int j0, int j1, long tolerance, long pairWeight,
+                                     int[] order1, int[] order2, int[] matchOf) {
+        // Block arithmetic subtracts up to pairWeight per row or column from f
+        if (pairWeight > Long.MAX_VALUE / 4 / (i1 - i0 + j1 - j0)) {
+            return false;
+        }
+        RunAlignment alignment = new RunAlignment(a, b, i0, i1, j0, j1, tolerance, pairWeight);
+        if (alignment.stored > Math.min(MAX_BOUNDARY, BOUNDARY_PER_RECORD * (i1 - i0 + j1 - j0))) {
+            return false;
+        }
+        alignment.fill();
+        alignment.trace(order1, order2, matchOf);
+        return true;
+    }
+
+    // Run g of Side1 covers cluster rows (rowEnd[g - 1], rowEnd[g]], run k of Side2 columns
+    // (colEnd[k - 1], colEnd[k]], and the windows lo(g) < k <= hi(g) are over runs. Only
+    // the row of f above each Side1 run is stored, over its window; the traceback sweeps
+    // a run's blocks again from it to get their left columns.
+    private static final class RunAlignment {
+        final long[] a;
+        final long[] b;
+        final int i0;
+        final int j0;
+        final long pairWeight;
+        final int[] rowEnd;
+        final int[] colEnd;
+        final int[] lo;
+        final int[] hi;
+        final int[] topAt;
+        final int topLength;
+        final long stored;
+        long[] tops;
+        // Scratch sized for the longest run: one block's left column, edges and helpers
+        final long[] left;
+        final long[] bottom;
+        final long[] right;
+        final long[] suffix;
+        final int[] deque;
+
+        RunAlignment(long[] a, long[] b, int i0, int i1, int j0, int j1, long tolerance, long pairWeight) {
+            this.a = a;
+            this.b = b;
+            this.i0 = i0;
+            this.j0 = j0;
+            this.pairWeight = pairWeight;
+            this.rowEnd = runEnds(a, i0, i1);
+            this.colEnd = runEnds(b, j0, j1);
+            int p = rowEnd.length - 1;
+            int q = colEnd.length - 1;
+            this.lo = new int[p + 1];
+            this.hi = new int[p + 1];
+            this.topAt = new int[p + 1];
+            long tops = 0;
+            long widest = 0;
+            int longestRun = 0;
+            int l = 0, h = 0;
+            for (int g = 1; g <= p; g++) {
+                long x = a[i0 + rowEnd[g] - 1];
+                while (l < q && x - b[j0 + colEnd[l + 1] - 1] > tolerance) {
+                    l++;
+                }
+                h = Math.max(h, l);
+                while (h < q && b[j0 + colEnd[h + 1] - 1] - x <= tolerance) {
+                    h++;
+                }
+                lo[g] = l;
+                hi[g] = h;
+                topAt[g] = (int) Math.min(Integer.MAX_VALUE, tops);
+                tops += colEnd[h] - colEnd[l] + 1;
+                int m = rowEnd[g] - rowEnd[g - 1];
+                widest = Math.max(widest, (long) (h - l) * (m + 1));
+                longestRun = Math.max(longestRun, m);
+            }
+            for (int k = 1; k <= q; k++) {
+                longestRun = Math.max(longestRun, colEnd[k] - colEnd[k - 1]);
+            }
+            // The traceback holds the left columns of one Side1 run's blocks at a time
+            this.stored = tops + widest;
+            this.topLength = (int) Math.min(Integer.MAX_VALUE, tops);
+            this.left = new long[longestRun + 1];
+            this.bottom = new long[longestRun + 1];
+            this.right = new long[longestRun + 1];
+            this.suffix = new long[longestRun + 1];
+            this.deque = new int[longestRun + 1];
+        }
+
+        // Forward pass over the Side1 runs, keeping the row of f above each
+        void fill() {
+            int cols = colEnd[colEnd.length - 1];
+            tops = new long[topLength];
+            long[] f = new long[cols + 1];
+            int filled = 0;
+            for (int g = 1; g < rowEnd.length; g++) {
+                for (int c = filled + 1; c <= colEnd[hi[g]]; c++) {
+                    f[c] = f[filled];
+                }
+                filled = Math.max(filled, colEnd[hi[g]]);
+                System.arraycopy(f, colEnd[lo[g]], tops, topAt[g], colEnd[hi[g]] - colEnd[lo[g]] + 1);
+                sweep(g, null, f);
+            }
+        }
+
+        // The blocks of Side1 run g left to right from its stored top row. Column
+        // colEnd[lo] is left of the window for every row of the run, so the first block's
+        // left column is constant; every other block's is the right column of the one
+        // before it. Keeps the left columns (m + 1 values per block) in lefts and the
+        // bottom rows in f when those are not null.
+        void sweep(int g, long[] lefts, long[] f) {
+            int m = rowEnd[g] - rowEnd[g - 1];
+            long x = a[i0 + rowEnd[g] - 1];
+            int base = topAt[g] - colEnd[lo[g]];
+            Arrays.fill(left, 0, m + 1, tops[topAt[g]]);
+            for (int k = lo[g] + 1; k <= hi[g]; k++) {
+                int c0 = colEnd[k - 1];
+                int n = colEnd[k] - c0;
+                long gain = pairWeight - Math.abs(x - b[j0 + colEnd[k] - 1]);
+                if (lefts != null) {
+                    System.arraycopy(left, 0, lefts, (k - lo[g] - 1) * (m + 1), m + 1);
+                }
+                if (f != null) {
+                    leaving(tops, base + c0, left, 0, m, n, gain, bottom, suffix, deque);
+                    System.arraycopy(bottom, 1, f, c0 + 1, n);
+                }
+                leaving(left, 0, tops, base + c0, n, m, gain, right, suffix, deque);
+                System.arraycopy(right, 0, left, 0, m + 1);
+            }
+        }
+
+        void trace(int[] order1, int[] order2, int[] matchOf) {
+            int rows = rowEnd[rowEnd.length - 1];
+            int cols = colEnd[colEnd.length - 1];
+            int[] rowRun = runOf(rowEnd, rows);
+            int[] colRun = runOf(colEnd, cols);
+            long[] lefts = null;
+            int swept = 0;
+            int r = rows, c = cols;
+            while (r > 0 && c > 0) {
+                int g = rowRun[r];
+                int k = colRun[c];
+                if (k > hi[g]) {
+                    c = colEnd[hi[g]];
+                } else if (k <= lo[g]) {
+                    r = rowEnd[g - 1];
+                } else {
+                    int m = rowEnd[g] - rowEnd[g - 1];
+                    if (swept != g) {
+                        lefts = new long[(hi[g] - lo[g]) * (m + 1)];
+                        sweep(g, lefts, null);
+                        swept = g;
+                    }
+                    int top = topAt[g] - colEnd[lo[g]] + colEnd[k - 1];
+                    int side = (k - lo[g] - 1) * (m + 1);
+                    int down = r - rowEnd[g - 1];
+                    int across = c - colEnd[k - 1];
+                    long gain = pairWeight - Math.abs(a[i0 + rowEnd[g] - 1] - b[j0 + colEnd[k] - 1]);
+                    // Best way into (down, across): from top row cell s, or left column cell
+                    // t, followed by as many pairs as fit
+                    long best = Long.MIN_VALUE;
+                    int entry = 0;
+                    for (int s = 0; s <= across; s++) {
+                        long v = tops[top + s] + gain * Math.min(down, across - s);
+                        if (v > best) {
+                            best = v;
+                            entry = s;
+                        }
+                    }
+                    for (int t = 1; t <= down; t++) {
+                        long v = lefts[side + t] + gain * Math.min(down - t, across);
+                        if (v > best) {
+                            best = v;
+                            entry = -t;
+                        }
+                    }
+                    int fromRow = rowEnd[g - 1] + Math.max(0, -entry);
+                    int fromCol = colEnd[k - 1] + Math.max(0, entry);
+                    for (int d = 0; d < Math.min(r - fromRow, c - fromCol); d++) {
+                        matchOf[order1[i0 + fromRow + d]] = order2[j0 + fromCol + d];
+                    }
+                    r = fromRow;
+                    c = fromCol;
+                }
+            }
+        }
+    }
+
+    // f along the far edge of a block whose cells all gain `gain` per pair: out[e] for
+    // e = 0..along is the value after `across` steps into the block, e steps along it.
+    // `entering` (along + 1 values) is the edge the far one is parallel to, `side`
+    // (across + 1 values) the edge meeting it at the origin; both start with the shared
+    // corner. Entering at e' of the parallel edge buys min(across, e - e') pairs; entering
+    // at t of the other edge buys min(across - t, e).
+    private static void leaving(long[] entering, int enterAt, long[] side, int sideAt, int across, int along, long gain,
+                                long[] out, long[] suffix, int[] deque) {
+        suffix[across] = side[sideAt + across] - gain * across;
+        for (int t = across - 1; t >= 0; t--) {
+            suffix[t] = Math.max(suffix[t + 1], side[sideAt + t] - gain * t);
+        }
+        int head = 0, tail = 0;
+        for (int e = 0; e <= along; e++) {
+            long v = entering[enterAt + e] - gain * e;
+            while (tail > head && entering[enterAt + deque[tail - 1]] - gain * deque[tail - 1] <= v) {
+                tail--;
+            }
+            deque[tail++] = e;
+            if (deque[head] < e - across) {
+                head++;
+            }
+            int d = deque[head];
+            long fromParallel = entering[enterAt + d] - gain * d + gain * e;
+            long fromSide = suffix[Math.max(0, across - e)] + gain * across;
+            out[e] = Math.max(fromParallel, fromSide);
+        }
+    }
+
+    // ends[g] = cluster index one past run g of equal amounts, ends[0] = 0
+    private static int[] runEnds(long[] sorted, int from, int to) {
+        int[] ends = new int[to - from + 1];
+        int runs = 0;
+        for (int i = from + 1; i <= to; i++) {
+            if (i == to || sorted[i] != sorted[i - 1]) {
+                ends[++runs] = i - from;
+            }
+        }
+        return Arrays.copyOf(ends, runs + 1);
+    }
+
+    // run[i] = run holding cluster index i - 1, for i = 1..size
+    private static int[] runOf(int[] ends, int size) {
+        int[] run = new int[size + 1];
+        for (int g = 1; g < ends.length; g++) {
+            Arrays.fill(run, ends[g - 1] + 1, ends[g] + 1, g);
+        }
+        return run;
+    }
+
+    private static void fallBack(long[] a, long[] b, int i0, int i1, int j0, int j1, long tolerance,
+                                 int[] order1, int[] order2, int[] matchOf, String reason) {
+        LOG.log(Level.WARNING, "Cluster of {0} x {1} amounts matched greedily, not at minimum total difference: {2}",
+                i1 - i0, j1 - j0, reason);
+        greedyCluster(a, b, i0, i1, j0, j1, tolerance, order1, order2, matchOf);
+    }
+
+    // Order-preserving greedy over one cluster: with equal window widths, giving each Side1
+    // amount the lowest free Side2 amount it reaches is a maximum matching. O(rows + cols).
+    private static void greedyCluster(long[] a, long[] b, int i0, int i1, int j0, int j1, long tolerance,
+                                      int[] order1, int[] order2, int[] matchOf) {
+        int j = j0;
+        for (int i = i0; i < i1 && j < j1; i++) {
+            while (j < j1 && a[i] - b[j] > tolerance) {
+                j++;
+            }
+            if (j < j1 && b[j] - a[i] <= tolerance) {
+                matchOf[order1[i]] = order2[j++];
+            }
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.example.reconciliation;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Dictionary for composite grouping keys such as (account, currency, value date).
+// Each distinct combination gets a dense long code starting at 1, so the engines only
+// ever hash and compare primitive codes; 0 stays reserved for "no key".
+// Use one dictionary for both sides of a run so equal keys get equal codes.
+public class PartitionKeys {
+
+    private final Map<List<Object>, Long> codes = new HashMap<>();
+
+    public synchronized long code(Object... parts) {
+        return codes.computeIfAbsent(Arrays.asList(parts.clone()), k -> (long) codes.size() + 1);
+    }
+
+    public synchronized int size() {
+        return codes.size();
+    }
+}
@@ -0,0 +1,127 @@
+package com.example.reconciliation;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+// Reconciles each partition key on its own: both sides are hash-partitioned on the
+// RecordBatch.PARTITION_KEY column and every partition is handed to the delegate as an
+// independent task on the executor with its own sub-batches, so no index or claim state is
+// shared between threads. Batches without a key column form a single partition.
+public class PartitionedReconciler implements Reconciler {
+
+    private final Reconciler delegate;
+    private final ReconcilerExecutor executor;
+
+    public PartitionedReconciler(Reconciler delegate) {
+        this(delegate, ReconcilerExecutor.commonPool());
+    }
+
+    public PartitionedReconciler(Reconciler delegate, ForkJoinPool pool) {
+        this(delegate, ReconcilerExecutor.forkJoin(pool));
+    }
+
+    public PartitionedReconciler(Reconciler delegate, ReconcilerExecutor executor) {
+        this.delegate = delegate;
+        this.executor = executor;
+    }
+
+    @Override
+    public List<String> reconcile(List<Record> side1, List<Record> side2, double variance) {
+        return reconcile(RecordBatch.of(side1), RecordBatch.of(side2), variance);
+    }
+
+    @Override
+    public List<String> reconcile(RecordBatch side1, RecordBatch side2, double variance) {
+        MatchResult result = new MatchResult();
+        reconcile(side1, side2, variance, result);
+        return result.asStrings();
+    }
+
+    @Override
+    public void reconcile(RecordBatch side1, RecordBatch side2, double variance, MatchSink sink) {
+        int scale = Math.max(side1.scale, side2.scale);
+        Partitions partitions = new Partitions(side1.rescale(scale), side2.rescale(scale));
+
+        // Each partition collects into its own result, replayed into the sink in partition order
+        MatchResult[] results = new MatchResult[partitions.count];
+        executor.forEach(partitions.count, p -> {
+            MatchResult result = new MatchResult();
+            delegate.reconcile(partitions.side1(p), partitions.side2(p), variance, result);
+            results[p] = result;
+        });
+
+        sink.begin(scale);
+        for (MatchResult result : results) {
+            result.replay(sink);
+        }
+    }
+
+    // Rows of both sides grouped by partition key in CSR form
+    static final class Partitions {
+        final int count;
+        private final RecordBatch side1;
+        private final RecordBatch side2;
+        private final int[] rows1;
+        private final int[] start1;
+        private final int[] rows2;
+        private final int[] start2;
+
+        Partitions(RecordBatch side1, RecordBatch side2) {
+            this.side1 = side1;
+            this.side2 = side2;
+            long[] keys1 = keys(side1);
+            long[] keys2 = keys(side2);
+
+            LongIntHashMap partitionOf = new LongIntHashMap(1024);
+            int[] partition1 = assign(keys1, partitionOf);
+            int[] partition2 = assign(keys2, partitionOf);
+            count = partitionOf.size();
+
+            start1 = new int[count + 1];
+            rows1 = group(partition1, start1);
+            start2 = new int[count + 1];
+            rows2 = group(partition2, start2);
+        }
+
+        RecordBatch side1(int partition) {
+            return side1.select(rows1, start1[partition], start1[partition + 1]);
+        }
+
+        RecordBatch side2(int partition) {
+            return side2.select(rows2, start2[partition], start2[partition + 1]);
+        }
+
+        private static long[] keys(RecordBatch batch) {
+            return batch.hasAttribute(RecordBatch.PARTITION_KEY) ? batch.attribute(RecordBatch.PARTITION_KEY) : new long[batch.size];
+        }
+
+        private static int[] assign(long[] keys, LongIntHashMap partitionOf) {
+            int[] partition = new int[keys.length];
+            for (int r = 0; r < keys.length; r++) {
+                int p = partitionOf.getOrDefault(keys[r], -1);
+                if (p < 0) {
+                    p = partitionOf.size();
+                    partitionOf.put(keys[r], p);
+                }
+                partition[r] = p;
+            }
+            return partition;
+        }
+
+        // Counting sort of row numbers by partition; start receives the offsets
+        private static int[] group(int[] partition, int[] start) {
+            for (int p : partition) {
+                start[p + 1]++;
+            }
+            for (int p = 1; p < start.length; p++) {
+                start[p] += start[p - 1];
+            }
+            int[] rows = new int[partition.length];
+            int[] fill = start.clone();
+            for (int r = 0; r < partition.length; r++) {
+                rows[fill[partition[r]]++] = r;
+            }
+            return rows;
+        }
+    }
+}
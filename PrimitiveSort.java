@@ -0,0 +1,116 @@
+package com.example.reconciliation;
+
+// In-place sort of a primitive key column that carries a parallel int[] payload along
+// (typically the original row index), so records can be ordered without boxing.
+final class PrimitiveSort {
+
+    private static final int INSERTION_SORT_THRESHOLD = 32;
+
+    private PrimitiveSort() {
+    }
+
+    public static void sort(long[] keys, int[] payload) {
+        sort(keys, payload, 0, keys.length);
+    }
+
+    public static void sort(long[] keys, int[] payload, int from, int to) {
+        if (keys.length != payload.length) {
+            throw new IllegalArgumentException("keys and payload must have the same length");
+        }
+        quickSort(keys, payload, from, to - 1, 2 * (32 - Integer.numberOfLeadingZeros(Math.max(1, to - from))));
+    }
+
+    // Three-way partitioning keeps runs of equal amounts (very common in our feeds) linear,
+    // and the depth limit falls back to heap sort so adversarial input stays O(n log n).
+    private static void quickSort(long[] keys, int[] payload, int lo, int hi, int depth) {
+        while (hi - lo >= INSERTION_SORT_THRESHOLD) {
+            if (depth-- == 0) {
+                heapSort(keys, payload, lo, hi);
+                return;
+            }
+
+            long pivot = medianOfThree(keys, lo, (lo + hi) >>> 1, hi);
+            int lt = lo, gt = hi, i = lo;
+            while (i <= gt) {
+                long k = keys[i];
+                if (k < pivot) {
+                    swap(keys, payload, lt++, i++);
+                } else if (k > pivot) {
+                    swap(keys, payload, i, gt--);
+                } else {
+                    i++;
+                }
+            }
+
+            // Recurse into the smaller part, loop on the larger one
+            if (lt - lo < hi - gt) {
+                quickSort(keys, payload, lo, lt - 1, depth);
+                lo = gt + 1;
+            } else {
+                quickSort(keys, payload, gt + 1, hi, depth);
+                hi = lt - 1;
+            }
+        }
+        insertionSort(keys, payload, lo, hi);
+    }
+
+    private static long medianOfThree(long[] keys, int a, int b, int c) {
+        long x = keys[a], y = keys[b], z = keys[c];
+        if (x < y) {
+            return y < z ? y : (x < z ? z : x);
+        }
+        return x < z ? x : (y < z ? z : y);
+    }
+
+    private static void insertionSort(long[] keys, int[] payload, int lo, int hi) {
+        for (int i = lo + 1; i <= hi; i++) {
+            long k = keys[i];
+            int p = payload[i];
+            int j = i - 1;
+            while (j >= lo && keys[j] > k) {
+                keys[j + 1] = keys[j];
+                payload[j + 1] = payload[j];
+                j--;
+            }
+            keys[j + 1] = k;
+            payload[j + 1] = p;
+        }
+    }
+
+    private static void heapSort(long[] keys, int[] payload, int lo, int hi) {
+        int n = hi - lo + 1;
+        for (int i = n / 2 - 1; i >= 0; i--) {
+            siftDown(keys, payload, lo, i, n);
+        }
+        for (int end = n - 1; end > 0; end--) {
+            swap(keys, payload, lo, lo + end);
+            siftDown(keys, payload, lo, 0, end);
+        }
+    }
+
+    private static void siftDown(long[] keys, int[] payload, int lo, int i, int n) {
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= n) {
+                return;
+            }
+            if (child + 1 < n && keys[lo + child + 1] > keys[lo + child]) {
+                child++;
+            }
+            if (keys[lo + i] >= keys[lo + child]) {
+                return;
+            }
+            swap(keys, payload, lo + i, lo + child);
+            i = child;
+        }
+    }
+
+    private static void swap(long[] keys, int[] payload, int i, int j) {
+        long k = keys[i];
+        keys[i] = keys[j];
+        keys[j] = k;
+        int p = payload[i];
+        payload[i] = payload[j];
+        payload[j] = p;
+    }
+}
@@ -0,0 +1,46 @@
+package com.example.reconciliation;
+
+import java.util.List;
+
+// Functional interface for reconcilers
+@FunctionalInterface
+interface Reconciler {
+    // Structured entry point: outcomes go to the sink as primitive events instead of text
+    void reconcile(RecordBatch side1, RecordBatch side2, double variance, MatchSink sink);
+
+    default List<String> reconcile(List<Record> side1, List<Record> side2, double variance) {
+        return reconcile(RecordBatch.of(side1), RecordBatch.of(side2), variance);
+    }
+
+    default List<String> reconcile(RecordBatch side1, RecordBatch side2, double variance) {
+        MatchResult result = new MatchResult();
+        reconcile(side1, side2, variance, result);
+        return result.asStrings();
+    }
+
+    // Runs this reconciler on the executor's threads instead of the common pool: parallel
+    // streams inside it go to the executor. Engines taking a ReconcilerExecutor in their
+    // constructor should get it there as well, for their indexed parallel phases.
+    default Reconciler withExecutor(ReconcilerExecutor executor) {
+        Reconciler self = this;
+        return new Reconciler() {
+            @Override
+            public List<String> reconcile(List<Record> side1, List<Record> side2, double variance) {
+                return executor.call(() -> self.reconcile(side1, side2, variance));
+            }
+
+            @Override
+            public List<String> reconcile(RecordBatch side1, RecordBatch side2, double variance) {
+                return executor.call(() -> self.reconcile(side1, side2, variance));
+            }
+
+            @Override
+            public void reconcile(RecordBatch side1, RecordBatch side2, double variance, MatchSink sink) {
+                executor.call(() -> {
+                    self.reconcile(side1, side2, variance, sink);
+                    return null;
+                });
+            }
+        };
+    }
+}
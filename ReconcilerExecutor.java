@@ -0,0 +1,210 @@
+package com.example.reconciliation;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.IntConsumer;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+// Where a reconciler's parallel work runs, instead of the JVM-wide common pool, so steps
+// sharing a JVM can be sized and isolated (see Reconciler.withExecutor):
+//   forkJoin  - a ForkJoinPool, work-stealing over the index range
+//   fixed     - n named threads, the range cut into chunks claimed from a counter
+//   of        - a caller-managed executor, chunked like fixed
+// Engines express parallel phases as forEach over an index range. In the chunked mode
+// the calling thread claims chunks too and only waits for chunks already running
+// elsewhere, so a forEach nested in another forEach on the same pool cannot deadlock on
+// queued helpers.
+// Parallel streams (the row-oriented engines) run in a ForkJoinPool. fixed threads are
+// ForkJoin workers, so streams share them and fixed(n) never runs more than n threads;
+// only an executor passed to of() that is not a ForkJoinPool gets a second pool of the
+// same parallelism for its streams, created on the first call.
+public abstract class ReconcilerExecutor implements AutoCloseable {
+
+    static final int CHUNKS_PER_THREAD = 4;
+
+    private static final ReconcilerExecutor COMMON = new ForkJoin(null, false);
+
+    // The default, and what engines did before executors were pluggable: parallel work runs
+    // in the ForkJoinPool of the calling task, or the common pool outside of one
+    public static ReconcilerExecutor commonPool() {
+        return COMMON;
+    }
+
+    public static ReconcilerExecutor forkJoin(ForkJoinPool pool) {
+        return new ForkJoin(pool, false);
+    }
+
+    public static ReconcilerExecutor forkJoin(int parallelism) {
+        return new ForkJoin(new ForkJoinPool(checkParallelism(parallelism)), true);
+    }
+
+    public static ReconcilerExecutor fixed(int threads) {
+        AtomicInteger count = new AtomicInteger();
+        ForkJoinPool pool = new ForkJoinPool(checkParallelism(threads), p -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+            thread.setName("reconciler-" + count.incrementAndGet());
+            return thread;
+        }, null, false);
+        return new Pooled(pool, threads, true);
+    }
+
+    // A caller-managed executor, used with at most parallelism concurrent workers
+    public static ReconcilerExecutor of(ExecutorService executor, int parallelism) {
+        return new Pooled(executor, checkParallelism(parallelism), false);
+    }
+
+    private static int checkParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be positive: " + parallelism);
+        }
+        return parallelism;
+    }
+
+    public abstract int parallelism();
+
+    // Runs body for every index in [0, n) and returns when all have run; the first
+    // exception thrown by body is rethrown after the others finished
+    public abstract void forEach(int n, IntConsumer body);
+
+    // Runs task so that parallel streams inside it use this executor's threads
+    public abstract <T> T call(Supplier<T> task);
+
+    @Override
+    public abstract void close();
+
+    static final class ForkJoin extends ReconcilerExecutor {
+        // null for the pool of the calling task
+        private final ForkJoinPool pool;
+        private final boolean owned;
+
+        ForkJoin(ForkJoinPool pool, boolean owned) {
+            this.pool = pool;
+            this.owned = owned;
+        }
+
+        @Override
+        public int parallelism() {
+            if (pool != null) {
+                return pool.getParallelism();
+            }
+            return ForkJoinTask.inForkJoinPool() ? ForkJoinTask.getPool().getParallelism() : ForkJoinPool.getCommonPoolParallelism();
+        }
+
+        @Override
+        public void forEach(int n, IntConsumer body) {
+            call(() -> {
+                IntStream.range(0, n).parallel().forEach(body);
+                return null;
+            });
+        }
+
+        @Override
+        public <T> T call(Supplier<T> task) {
+            // Already on one of the pool's threads: streams stay in this pool anyway
+            if (pool == null || ForkJoinTask.inForkJoinPool() && ForkJoinTask.getPool() == pool) {
+                return task.get();
+            }
+            return pool.submit(task::get).join();
+        }
+
+        @Override
+        public void close() {
+            if (owned) {
+                pool.shutdown();
+            }
+        }
+    }
+
+    static final class Pooled extends ReconcilerExecutor {
+        private final ExecutorService executor;
+        private final int parallelism;
+        private final boolean owned;
+        private volatile ForkJoin streams;
+
+        Pooled(ExecutorService executor, int parallelism, boolean owned) {
+            this.executor = executor;
+            this.parallelism = parallelism;
+            this.owned = owned;
+        }
+
+        @Override
+        public int parallelism() {
+            return parallelism;
+        }
+
+        @Override
+        public void forEach(int n, IntConsumer body) {
+            if (n <= 0) {
+                return;
+            }
+            int chunks = Math.min(n, parallelism * CHUNKS_PER_THREAD);
+            AtomicInteger next = new AtomicInteger();
+            CountDownLatch done = new CountDownLatch(chunks);
+            AtomicReference<Throwable> failure = new AtomicReference<>();
+            Runnable worker = () -> {
+                int c;
+                while ((c = next.getAndIncrement()) < chunks) {
+                    try {
+                        int to = (int) ((long) n * (c + 1) / chunks);
+                        for (int i = (int) ((long) n * c / chunks); i < to; i++) {
+                            body.accept(i);
+                        }
+                    } catch (Throwable t) {
+                        failure.compareAndSet(null, t);
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            };
+            for (int k = 1; k < Math.min(parallelism, chunks); k++) {
+                executor.execute(worker);
+            }
+            worker.run();
+            try {
+                done.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for reconciliation workers", e);
+            }
+            Throwable t = failure.get();
+            if (t instanceof RuntimeException) {
+                throw (RuntimeException) t;
+            }
+            if (t instanceof Error) {
+                throw (Error) t;
+            }
+        }
+
+        @Override
+        public <T> T call(Supplier<T> task) {
+            ForkJoin pool = streams;
+            if (pool == null) {
+                synchronized (this) {
+                    if (streams == null) {
+                        streams = executor instanceof ForkJoinPool
+                                ? new ForkJoin((ForkJoinPool) executor, false)
+                                : new ForkJoin(new ForkJoinPool(parallelism), true);
+                    }
+                    pool = streams;
+                }
+            }
+            return pool.call(task);
+        }
+
+        @Override
+        public void close() {
+            if (owned) {
+                executor.shutdown();
+            }
+            if (streams != null) {
+                streams.close();
+            }
+        }
+    }
+}
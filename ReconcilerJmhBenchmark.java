@@ -0,0 +1,148 @@
+package com.example.reconciliation;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+// JMH harness for the Reconciler strategies; one operation is a full reconciliation of
+// both sides. Build and run with the jmh profile of bestmatchpom.xml:
+//
+//   mvn -f bestmatchpom.xml -P jmh package
+//   java -jar target/benchmarks.jar ReconcilerJmhBenchmark -prof gc -p engine=SORT_MERGE,CAS_CLAIM
+//
+// or through main, which always attaches the gc profiler for allocation rates. The default
+// parameters are a smoke matrix of six engines at 100,000 rows (24 runs, about
+// 25 minutes); widen it with -p. Engines with a row limit (the quadratic linear scan)
+// refuse larger inputs in setUp instead of running for hours. Forks load the vector
+// module, add -jvmArgsAppend -Dreconciliation.simd=false to measure the scalar scan. Only
+// CAS_CLAIM_FIRST_COME (and ADAPTIVE when it picks CAS claim) probes with that scan;
+// CAS_CLAIM skips claimed slots through FreeSlots instead.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+@Fork(value = 2, jvmArgsAppend = {"-Xms4g", "-Xmx4g", "--add-modules", "jdk.incubator.vector"})
+public class ReconcilerJmhBenchmark {
+
+    public enum Engine {
+        LINEAR_SCAN(ParallelReconciliationBenchmark.linearScanReconciler, 20_000),
+        OPTIMIZED_SUBMAP(ParallelReconciliationBenchmark.optimizedSubMapReconciler),
+        SORTED_LIST_DECIMAL_SAFE(ParallelReconciliationBenchmark.sortedListDecimalSafeReconciler),
+        CAS_CLAIM(ParallelReconciliationBenchmark.casClaimReconciler),
+        CAS_CLAIM_FIRST_COME(ParallelReconciliationBenchmark.casClaimFirstComeReconciler),
+        SORT_MERGE(ParallelReconciliationBenchmark.sortMergeSweepReconciler),
+        // Copies the RecordBatch sides off heap per operation; OffHeapJmhBenchmark loads them there
+        OFF_HEAP(ParallelReconciliationBenchmark.offHeapReconciler),
+        HASH_GRID(ParallelReconciliationBenchmark.hashGridReconciler),
+        OPTIMAL_ASSIGNMENT(ParallelReconciliationBenchmark.optimalAssignmentReconciler),
+        PARTITIONED_SWEEP(ParallelReconciliationBenchmark.partitionedSweepReconciler),
+        AGGREGATE(ParallelReconciliationBenchmark.aggregateReconciler),
+        EXTERNAL_SORT(ParallelReconciliationBenchmark.externalSortReconciler),
+        ADAPTIVE(ParallelReconciliationBenchmark.adaptiveReconciler),
+        DETERMINISTIC(ParallelReconciliationBenchmark.deterministicReconciler);
+
+        final Reconciler reconciler;
+        // Largest records value the engine finishes in benchmark time
+        final int maxRecords;
+
+        Engine(Reconciler reconciler) {
+            this(reconciler, Integer.MAX_VALUE);
+        }
+
+        Engine(Reconciler reconciler, int maxRecords) {
+            this.reconciler = reconciler;
+            this.maxRecords = maxRecords;
+        }
+    }
+
+    @Param({"SORT_MERGE", "CAS_CLAIM", "HASH_GRID", "OPTIMAL_ASSIGNMENT", "DETERMINISTIC", "ADAPTIVE"})
+    public Engine engine;
+
+    @Param({"100000"})
+    public int records;
+
+    @Param({"1.5"})
+    public double variance;
+
+    // Share of rows whose amount repeats an amount already generated for the same side
+    @Param({"0.3"})
+    public double duplicateRatio;
+
+    // ZIPF draws from 10,000 distinct amounts, 30% of them round; LOG_NORMAL adds a long tail
+    @Param({"UNIFORM", "ZIPF"})
+    public DatasetGenerator.Distribution distribution;
+
+    // Parallelism of the pool the reconciliation runs in; parallel streams inside an engine
+    // use the pool of the calling ForkJoin task
+    @Param({"1", "4"})
+    public int threads;
+
+    private RecordBatch batch1;
+    private RecordBatch batch2;
+    private ForkJoinPool pool;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        if (records > engine.maxRecords) {
+            throw new IllegalArgumentException(engine + " is limited to " + engine.maxRecords + " records, got " + records);
+        }
+        DatasetGenerator generator = new DatasetGenerator()
+                .seed(42)
+                .records(records)
+                .distribution(distribution)
+                .duplicateClusterRate(duplicateRatio)
+                .variance(variance)
+                .partitionKeys(1000);
+        if (distribution == DatasetGenerator.Distribution.ZIPF) {
+            generator.zipf(1.1, 10_000, 0.3);
+        }
+        DatasetGenerator.Dataset dataset = generator.generate();
+        batch1 = dataset.side1;
+        batch2 = dataset.side2;
+        pool = new ForkJoinPool(threads);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public void reconcile(Blackhole blackhole) {
+        MatchResult result = pool.submit(() -> {
+            MatchResult r = new MatchResult();
+            engine.reconciler.reconcile(batch1, batch2, variance, r);
+            return r;
+        }).join();
+        blackhole.consume(result.matched());
+        blackhole.consume(result);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(ReconcilerJmhBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
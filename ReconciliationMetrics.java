@@ -0,0 +1,108 @@
+package com.example.reconciliation;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+
+// Micrometer meters of one reconciler, all tagged with the engine name:
+//   reconciliation.phase            timer per phase (index build, matching, unmatched, emission)
+//   reconciliation.candidate.window records within variance of a Side1 amount, per lookup
+//   reconciliation.claim.retries    lost claims per lookup (CAS engines)
+//   reconciliation.records          counter per outcome (matched, unmatched.side1, unmatched.side2)
+// Engines ask enabled() once per run and skip the per-lookup bookkeeping when nothing is
+// listening, so an engine on the global registry costs nothing until a registry is added.
+final class ReconciliationMetrics {
+
+    // Consecutive slices of one run, recorded in this order by every engine so the timers
+    // compare across engines:
+    //   INDEX_BUILD rescaling both sides and sorting or indexing them for the probes
+    //   MATCHING    deciding every Side1 row's partner (near-miss candidates included)
+    //   UNMATCHED   collecting the Side2 rows nobody claimed; Side1 leftovers are already
+    //               known as rows without a partner
+    //   EMISSION    every MatchSink call: the Side1 outcomes in input order, then the
+    //               unmatched Side2 rows, each with its near misses
+    enum Phase {
+        INDEX_BUILD("index.build"), MATCHING("matching"), UNMATCHED("unmatched"), EMISSION("emission");
+
+        final String tag;
+
+        Phase(String tag) {
+            this.tag = tag;
+        }
+    }
+
+    private final MeterRegistry registry;
+    private final Map<Phase, Timer> phases = new EnumMap<>(Phase.class);
+    private final DistributionSummary candidateWindow;
+    private final DistributionSummary claimRetries;
+    private final Counter matched;
+    private final Counter unmatchedSide1;
+    private final Counter unmatchedSide2;
+
+    ReconciliationMetrics(MeterRegistry registry, String engine) {
+        this.registry = registry;
+        for (Phase phase : Phase.values()) {
+            phases.put(phase, Timer.builder("reconciliation.phase")
+                    .tag("engine", engine)
+                    .tag("phase", phase.tag)
+                    .register(registry));
+        }
+        candidateWindow = DistributionSummary.builder("reconciliation.candidate.window")
+                .tag("engine", engine)
+                .baseUnit("records")
+                .publishPercentileHistogram()
+                .register(registry);
+        claimRetries = DistributionSummary.builder("reconciliation.claim.retries")
+                .tag("engine", engine)
+                .publishPercentileHistogram()
+                .register(registry);
+        matched = outcome(registry, engine, "matched");
+        unmatchedSide1 = outcome(registry, engine, "unmatched.side1");
+        unmatchedSide2 = outcome(registry, engine, "unmatched.side2");
+    }
+
+    // Meters on Micrometer's global registry, which reports wherever the application points it
+    static ReconciliationMetrics global(String engine) {
+        return new ReconciliationMetrics(Metrics.globalRegistry, engine);
+    }
+
+    private static Counter outcome(MeterRegistry registry, String engine, String outcome) {
+        return Counter.builder("reconciliation.records")
+                .tag("engine", engine)
+                .tag("outcome", outcome)
+                .register(registry);
+    }
+
+    boolean enabled() {
+        return !(registry instanceof CompositeMeterRegistry) || !((CompositeMeterRegistry) registry).getRegistries().isEmpty();
+    }
+
+    // Records the time since startNanos against the phase and returns the current time,
+    // so consecutive phases can be chained: t = metrics.phase(Phase.MATCHING, t)
+    long phase(Phase phase, long startNanos) {
+        long now = System.nanoTime();
+        phases.get(phase).record(now - startNanos, TimeUnit.NANOSECONDS);
+        return now;
+    }
+
+    void candidateWindow(int records) {
+        candidateWindow.record(records);
+    }
+
+    void claimRetries(int retries) {
+        claimRetries.record(retries);
+    }
+
+    void outcomes(long pairs, long unmatched1, long unmatched2) {
+        matched.increment(pairs);
+        unmatchedSide1.increment(unmatched1);
+        unmatchedSide2.increment(unmatched2);
+    }
+}
@@ -0,0 +1,335 @@
+package com.example.reconciliation;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import javax.sql.DataSource;
+
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.StepExecutionListener;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.step.tasklet.Tasklet;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.database.JdbcCursorItemReader;
+import org.springframework.batch.repeat.RepeatStatus;
+
+// Reconciliation as a batch step with memory bounded by Side2:
+//   build - Side2 streams through a cursor into RecordBatch columns, then a MatchIndex
+//   probe - Side1 streams through a second cursor; each row claims its nearest unclaimed
+//           Side2 amount within variance and the outcome goes straight to the writer
+// Side1 is never held in memory, and results leave in JDBC batches, each committed on
+// its own (see JdbcMatchWriter). Both queries return
+// (id, amount in minor units at scale), see RecordBatchRowCallbackHandler.selectSql.
+// Counts end up in the step's read/write counts and its execution context.
+//
+// With a ConcurrentSideLoader, Side2 is loaded in parallel key ranges instead, and both
+// sides are read as of one SCN fixed when the step first runs: the ranges and the Side1
+// cursor see the same committed data. The SCN is kept in the step's execution context,
+// so a restart reads the same point again.
+//
+// With near-miss suggestions (suggestNearMisses) both sides are read into memory and
+// reconciled by the sort-merge sweep instead, which reports the nearest unmatched
+// records of the other side after every unmatched record; no snapshot is used then.
+//
+// With an ExternalSortReconciler (spillToDisk) neither side is held in memory: both
+// cursors stream their rows into SpillingSides, which spill sorted runs to disk within
+// the reconciler's memory budget, and the runs are merge-swept straight to the writer.
+// Near-miss suggestions take precedence, as they need both sides in memory.
+//
+// With a snapshot path the built index is saved there, and a restart of the same job
+// instance maps it instead of reading and sorting Side2 again. The snapshot is keyed by
+// the Side2 query, the scale and the job instance, so a new run (tomorrow's Side2) never
+// picks up an old one, and it is deleted once the step completes.
+public class ReconciliationTasklet implements Tasklet, StepExecutionListener {
+
+    static final int FETCH_SIZE = 10_000;
+
+    static final String SCN_KEY = "reconciliation.scn";
+
+    private final DataSource dataSource;
+    private final String side1Sql;
+    private final String side2Sql;
+    private final int scale;
+    private final double variance;
+    private final JdbcMatchWriter writer;
+    private final Path snapshot;
+    private final ConcurrentSideLoader loader;
+    private final ConcurrentSideLoader.Side side1;
+    private final ConcurrentSideLoader.Side side2;
+    private int suggestions;
+    private double suggestionDistance;
+    private ExternalSortReconciler externalSort;
+
+    public ReconciliationTasklet(DataSource dataSource, String side1Sql, String side2Sql, int scale, double variance, JdbcMatchWriter writer) {
+        this(dataSource, side1Sql, side2Sql, scale, variance, writer, null);
+    }
+
+    public ReconciliationTasklet(DataSource dataSource, String side1Sql, String side2Sql, int scale, double variance, JdbcMatchWriter writer,
+            Path snapshot) {
+        this(dataSource, side1Sql, side2Sql, scale, variance, writer, snapshot, null, null, null);
+    }
+
+    public ReconciliationTasklet(ConcurrentSideLoader loader, ConcurrentSideLoader.Side side1, ConcurrentSideLoader.Side side2, double variance,
+            JdbcMatchWriter writer, Path snapshot) {
+        this(loader.dataSource(), null, loader.selectSql(side2, 0), loader.scale(), variance, writer, snapshot, loader, side1, side2);
+    }
+
+    private ReconciliationTasklet(DataSource dataSource, String side1Sql, String side2Sql, int scale, double variance, JdbcMatchWriter writer,
+            Path snapshot, ConcurrentSideLoader loader, ConcurrentSideLoader.Side side1, ConcurrentSideLoader.Side side2) {
+        FixedPoint.checkScale(scale);
+        this.dataSource = dataSource;
+        this.side1Sql = side1Sql;
+        this.side2Sql = side2Sql;
+        this.scale = scale;
+        this.variance = variance;
+        this.writer = writer;
+        this.snapshot = snapshot;
+        this.loader = loader;
+        this.side1 = side1;
+        this.side2 = side2;
+    }
+
+    // Up to suggestions near misses per unmatched record, at most maxDistance away
+    public ReconciliationTasklet suggestNearMisses(int suggestions, double maxDistance) {
+        if (suggestions < 0) {
+            throw new IllegalArgumentException("suggestions must not be negative: " + suggestions);
+        }
+        this.suggestions = suggestions;
+        this.suggestionDistance = maxDistance;
+        return this;
+    }
+
+    // Sides larger than memory: stream both into sorted runs on disk and merge-sweep them
+    public ReconciliationTasklet spillToDisk(ExternalSortReconciler externalSort) {
+        this.externalSort = externalSort;
+        return this;
+    }
+
+    @Override
+    public RepeatStatus execute(StepContribution contribution, ChunkContext chunkContext) throws Exception {
+        ExecutionContext context = chunkContext.getStepContext().getStepExecution().getExecutionContext();
+        long scn = 0;
+        if (loader != null) {
+            if (!context.containsKey(SCN_KEY)) {
+                context.putLong(SCN_KEY, loader.currentScn());
+            }
+            scn = context.getLong(SCN_KEY);
+        }
+        // A restart starts over: drop whatever batches the failed attempt committed
+        writer.deleteRun();
+        if (suggestions > 0) {
+            sweep(contribution, context, scn);
+            return RepeatStatus.FINISHED;
+        }
+        if (externalSort != null) {
+            spill(contribution, context, scn);
+            return RepeatStatus.FINISHED;
+        }
+        long source = snapshotSource(chunkContext.getStepContext().getStepExecution());
+        MatchIndex index = snapshot != null ? MatchIndex.open(snapshot, source) : null;
+        if (index == null) {
+            index = buildIndex(contribution, scn);
+            if (snapshot != null) {
+                index.save(snapshot, source);
+            }
+        }
+        long tolerance = FixedPoint.toleranceToMinor(variance, scale);
+
+        writer.begin(scale);
+        long pairs = 0;
+        long unmatched1 = 0;
+        JdbcCursorItemReader<Row> side1Reader = reader(loader != null ? loader.selectSql(side1, scn) : side1Sql);
+        try {
+            Row row;
+            while ((row = side1Reader.read()) != null) {
+                contribution.incrementReadCount();
+                int slot = index.claimNearest(row.amount, tolerance);
+                if (slot >= 0) {
+                    writer.matchedPair(row.id, row.amount, index.id(slot), index.amount(slot));
+                    pairs++;
+                } else {
+                    writer.unmatchedSide1(row.id, row.amount);
+                    unmatched1++;
+                }
+            }
+        } finally {
+            side1Reader.close();
+        }
+        for (int slot = 0; slot < index.size(); slot++) {
+            if (!index.isClaimed(slot)) {
+                writer.unmatchedSide2(index.id(slot), index.amount(slot));
+            }
+        }
+        writer.flush();
+
+        record(contribution, context, pairs, unmatched1, index.size() - index.claimedCount());
+        return RepeatStatus.FINISHED;
+    }
+
+    private void sweep(StepContribution contribution, ExecutionContext context, long scn) throws Exception {
+        RecordBatch s2 = read(side2, side2Sql, scn, contribution);
+        RecordBatch s1 = read(side1, side1Sql, scn, contribution);
+        Tally tally = new Tally(writer);
+        new SortMergeReconciler(suggestions, suggestionDistance).reconcile(s1, s2, variance, tally);
+        writer.flush();
+        record(contribution, context, tally.pairs, tally.unmatched1, tally.unmatched2);
+    }
+
+    private void spill(StepContribution contribution, ExecutionContext context, long scn) throws Exception {
+        Tally tally = new Tally(writer);
+        try (ExternalSortReconciler.SpillingSide spill1 = externalSort.newSide(scale);
+             ExternalSortReconciler.SpillingSide spill2 = externalSort.newSide(scale)) {
+            stream(loader != null ? loader.selectSql(side2, scn) : side2Sql, spill2, contribution);
+            stream(loader != null ? loader.selectSql(side1, scn) : side1Sql, spill1, contribution);
+            externalSort.reconcile(spill1, spill2, variance, tally);
+        }
+        writer.flush();
+        record(contribution, context, tally.pairs, tally.unmatched1, tally.unmatched2);
+    }
+
+    // Every row of sql into the spilling side, one cursor row at a time
+    private void stream(String sql, ExternalSortReconciler.SpillingSide side, StepContribution contribution) throws Exception {
+        JdbcCursorItemReader<Row> cursor = reader(sql);
+        try {
+            Row row;
+            while ((row = cursor.read()) != null) {
+                contribution.incrementReadCount();
+                side.add(row.id, row.amount);
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private void record(StepContribution contribution, ExecutionContext context, long pairs, long unmatched1, long unmatched2) {
+        contribution.incrementWriteCount((int) Math.min(Integer.MAX_VALUE, writer.rowsWritten()));
+        context.putLong("reconciliation.matched", pairs);
+        context.putLong("reconciliation.unmatched.side1", unmatched1);
+        context.putLong("reconciliation.unmatched.side2", unmatched2);
+    }
+
+    @Override
+    public void beforeStep(StepExecution stepExecution) {
+    }
+
+    // A completed step never restarts, so its snapshot has nothing left to serve
+    @Override
+    public ExitStatus afterStep(StepExecution stepExecution) {
+        if (snapshot != null && ExitStatus.COMPLETED.equals(stepExecution.getExitStatus())) {
+            try {
+                Files.deleteIfExists(snapshot);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot delete Side2 snapshot " + snapshot, e);
+            }
+        }
+        return null;
+    }
+
+    private MatchIndex buildIndex(StepContribution contribution, long scn) throws Exception {
+        return MatchIndex.build(read(side2, side2Sql, scn, contribution));
+    }
+
+    // A whole side through the loader when there is one, else through a cursor on sql
+    private RecordBatch read(ConcurrentSideLoader.Side side, String sql, long scn, StepContribution contribution) throws Exception {
+        if (loader != null) {
+            RecordBatch batch = loader.load(side, scn).join();
+            for (int i = 0; i < batch.size; i++) {
+                contribution.incrementReadCount();
+            }
+            return batch;
+        }
+        RecordBatch.Builder builder = new RecordBatch.Builder(scale);
+        JdbcCursorItemReader<Row> cursor = reader(sql);
+        try {
+            Row row;
+            while ((row = cursor.read()) != null) {
+                contribution.incrementReadCount();
+                builder.add(row.id, row.amount);
+            }
+        } finally {
+            cursor.close();
+        }
+        return builder.build();
+    }
+
+    // Fingerprint of what the index is built from: the query only names Side2, the job
+    // instance pins the run whose data it was read for
+    private long snapshotSource(StepExecution stepExecution) {
+        long instance = stepExecution.getJobExecution().getJobInstance().getInstanceId();
+        return 31L * (31L * side2Sql.hashCode() + scale) + instance;
+    }
+
+    private JdbcCursorItemReader<Row> reader(String sql) throws Exception {
+        // One Row per cursor, refilled for every fetched row; callers copy the fields out
+        // before the next read, so nothing is allocated per row
+        Row row = new Row();
+        JdbcCursorItemReader<Row> reader = new JdbcCursorItemReader<>();
+        reader.setDataSource(dataSource);
+        reader.setSql(sql);
+        reader.setFetchSize(FETCH_SIZE);
+        reader.setSaveState(false);
+        reader.setRowMapper((rs, rowNum) -> {
+            row.id = rs.getInt(1);
+            row.amount = rs.getLong(2);
+            return row;
+        });
+        reader.afterPropertiesSet();
+        reader.open(new ExecutionContext());
+        return reader;
+    }
+
+    static final class Row {
+        int id;
+        long amount;
+    }
+
+    // Counts outcomes on their way to the writer
+    private static final class Tally implements MatchSink {
+        private final MatchSink target;
+        long pairs;
+        long unmatched1;
+        long unmatched2;
+
+        Tally(MatchSink target) {
+            this.target = target;
+        }
+
+        @Override
+        public void begin(int scale) {
+            target.begin(scale);
+        }
+
+        @Override
+        public void matchedPair(int id1, long amount1, int id2, long amount2) {
+            pairs++;
+            target.matchedPair(id1, amount1, id2, amount2);
+        }
+
+        @Override
+        public void unmatchedSide1(int id, long amount) {
+            unmatched1++;
+            target.unmatchedSide1(id, amount);
+        }
+
+        @Override
+        public void nearMiss(int id1, long amount1, int id2, long amount2) {
+            target.nearMiss(id1, amount1, id2, amount2);
+        }
+
+        @Override
+        public void unmatchedSide2(int id, long amount) {
+            unmatched2++;
+            target.unmatchedSide2(id, amount);
+        }
+
+        @Override
+        public void matchedGroup(int[] ids1, long[] amounts1, int[] ids2, long[] amounts2) {
+            pairs++;
+            target.matchedGroup(ids1, amounts1, ids2, amounts2);
+        }
+    }
+}
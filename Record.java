@@ -0,0 +1,20 @@
+package com.example.reconciliation;
+
+// Record class
+class Record {
+    int id;
+    double amount;
+    // Grouping key (account / currency / value date code from PartitionKeys); records
+    // only match within the same key. 0 when the feed has no grouping.
+    long partitionKey;
+
+    Record(int id, double amount) {
+        this(id, amount, 0);
+    }
+
+    Record(int id, double amount, long partitionKey) {
+        this.id = id;
+        this.amount = amount;
+        this.partitionKey = partitionKey;
+    }
+}
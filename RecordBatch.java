@@ -0,0 +1,207 @@
+package com.example.reconciliation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Columnar side of a reconciliation: one int[] of ids and one long[] of amounts held in
+// minor units at a fixed decimal scale (amount 12.34 at scale 2 is stored as 1234),
+// plus optional named long[] attribute columns (account, currency, value date, ...).
+// Row i of every column belongs to the same record.
+final class RecordBatch {
+
+    public static final int DEFAULT_SCALE = 2;
+    public static final String PARTITION_KEY = "partitionKey";
+
+    final int size;
+    final int[] ids;
+    final long[] amounts;
+    final int scale;
+    private final Map<String, long[]> attributes;
+
+    RecordBatch(int[] ids, long[] amounts, int scale) {
+        this(ids, amounts, scale, Collections.emptyMap());
+    }
+
+    private RecordBatch(int[] ids, long[] amounts, int scale, Map<String, long[]> attributes) {
+        if (ids.length != amounts.length) {
+            throw new IllegalArgumentException("ids and amounts must have the same length");
+        }
+        FixedPoint.checkScale(scale);
+        this.size = ids.length;
+        this.ids = ids;
+        this.amounts = amounts;
+        this.scale = scale;
+        this.attributes = attributes;
+    }
+
+    // Adapter from the row-oriented List<Record>, using the smallest scale that
+    // represents every amount exactly
+    public static RecordBatch of(List<Record> records) {
+        return of(records, FixedPoint.inferScale(records));
+    }
+
+    public static RecordBatch of(List<Record> records, int scale) {
+        int n = records.size();
+        int[] ids = new int[n];
+        long[] amounts = new long[n];
+        long[] keys = new long[n];
+        boolean keyed = false;
+        for (int i = 0; i < n; i++) {
+            Record r = records.get(i);
+            ids[i] = r.id;
+            amounts[i] = FixedPoint.toMinor(r.amount, scale);
+            keys[i] = r.partitionKey;
+            keyed |= r.partitionKey != 0;
+        }
+        RecordBatch batch = new RecordBatch(ids, amounts, scale);
+        return keyed ? batch.withAttribute(PARTITION_KEY, keys) : batch;
+    }
+
+    public RecordBatch withAttribute(String name, long[] column) {
+        if (column.length != size) {
+            throw new IllegalArgumentException("Attribute column " + name + " has " + column.length + " rows, expected " + size);
+        }
+        Map<String, long[]> copy = new LinkedHashMap<>(attributes);
+        copy.put(name, column);
+        return new RecordBatch(ids, amounts, scale, copy);
+    }
+
+    public long[] attribute(String name) {
+        long[] column = attributes.get(name);
+        if (column == null) {
+            throw new IllegalArgumentException("No attribute column " + name);
+        }
+        return column;
+    }
+
+    public boolean hasAttribute(String name) {
+        return attributes.containsKey(name);
+    }
+
+    // Same rows expressed at a larger scale, so both sides of a run can be compared directly
+    public RecordBatch rescale(int newScale) {
+        if (newScale == scale) {
+            return this;
+        }
+        long[] rescaled = new long[size];
+        for (int i = 0; i < size; i++) {
+            rescaled[i] = FixedPoint.rescale(amounts[i], scale, newScale);
+        }
+        return new RecordBatch(ids, rescaled, newScale, attributes);
+    }
+
+    public double amount(int row) {
+        return FixedPoint.toDouble(amounts[row], scale);
+    }
+
+    // A tolerance such as 1.5 expressed in this batch's minor units, rounded down
+    public long tolerance(double variance) {
+        return FixedPoint.toleranceToMinor(variance, scale);
+    }
+
+    // Row indexes ordered by amount; amountsOut receives the amounts in that order
+    public int[] sortedOrder(long[] amountsOut) {
+        int[] order = new int[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        System.arraycopy(amounts, 0, amountsOut, 0, size);
+        PrimitiveSort.sort(amountsOut, order);
+        return order;
+    }
+
+    // Rows of all parts one after the other, e.g. the key ranges of a side loaded in
+    // parallel; parts must be at scale and carry no attribute columns
+    static RecordBatch concat(List<RecordBatch> parts, int scale) {
+        int n = 0;
+        for (RecordBatch part : parts) {
+            if (part.scale != scale || !part.attributes.isEmpty()) {
+                throw new IllegalArgumentException("Cannot concatenate a batch at scale " + part.scale + " with attributes "
+                        + part.attributes.keySet() + " into scale " + scale);
+            }
+            n = Math.addExact(n, part.size);
+        }
+        int[] ids = new int[n];
+        long[] amounts = new long[n];
+        int offset = 0;
+        for (RecordBatch part : parts) {
+            System.arraycopy(part.ids, 0, ids, offset, part.size);
+            System.arraycopy(part.amounts, 0, amounts, offset, part.size);
+            offset += part.size;
+        }
+        return new RecordBatch(ids, amounts, scale);
+    }
+
+    // Copy of rows[from..to) in that order, attribute columns included
+    public RecordBatch select(int[] rows, int from, int to) {
+        int n = to - from;
+        int[] selectedIds = new int[n];
+        long[] selectedAmounts = new long[n];
+        for (int k = 0; k < n; k++) {
+            selectedIds[k] = ids[rows[from + k]];
+            selectedAmounts[k] = amounts[rows[from + k]];
+        }
+        Map<String, long[]> selectedAttributes = new LinkedHashMap<>();
+        for (Map.Entry<String, long[]> column : attributes.entrySet()) {
+            long[] source = column.getValue();
+            long[] selected = new long[n];
+            for (int k = 0; k < n; k++) {
+                selected[k] = source[rows[from + k]];
+            }
+            selectedAttributes.put(column.getKey(), selected);
+        }
+        return new RecordBatch(selectedIds, selectedAmounts, scale, selectedAttributes);
+    }
+
+    public List<Record> toRecords() {
+        long[] keys = attributes.get(PARTITION_KEY);
+        List<Record> records = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            records.add(new Record(ids[i], amount(i), keys != null ? keys[i] : 0));
+        }
+        return records;
+    }
+
+    // Growable builder for loaders that do not know the row count up front
+    static final class Builder {
+        private final int scale;
+        private int size;
+        private int[] ids;
+        private long[] amounts;
+
+        Builder(int scale) {
+            this(scale, 1024);
+        }
+
+        Builder(int scale, int expectedRows) {
+            FixedPoint.checkScale(scale);
+            this.scale = scale;
+            this.ids = new int[Math.max(16, expectedRows)];
+            this.amounts = new long[ids.length];
+        }
+
+        public Builder add(int id, long amount) {
+            if (size == ids.length) {
+                int capacity = ids.length + (ids.length >> 1);
+                ids = Arrays.copyOf(ids, capacity);
+                amounts = Arrays.copyOf(amounts, capacity);
+            }
+            ids[size] = id;
+            amounts[size] = amount;
+            size++;
+            return this;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public RecordBatch build() {
+            return new RecordBatch(Arrays.copyOf(ids, size), Arrays.copyOf(amounts, size), scale);
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.example.reconciliation;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+// Streams (id, amount) rows straight into RecordBatch columns. The amount column is
+// expected to be already scaled to minor units by the query (see selectSql), so the
+// driver decodes each NUMBER with getLong and no BigDecimal, Map or Record is created
+// per row.
+public class RecordBatchRowCallbackHandler implements RowCallbackHandler {
+
+    private final RecordBatch.Builder builder;
+
+    public RecordBatchRowCallbackHandler(int scale) {
+        this.builder = new RecordBatch.Builder(scale);
+    }
+
+    public RecordBatchRowCallbackHandler(int scale, int expectedRows) {
+        this.builder = new RecordBatch.Builder(scale, expectedRows);
+    }
+
+    // SELECT id, ROUND(amount * 10^scale) FROM table [WHERE ...]
+    public static String selectSql(String table, String idColumn, String amountColumn, int scale) {
+        return "SELECT " + idColumn + ", " + FixedPoint.minorUnitsExpression(amountColumn, scale) + " FROM " + table;
+    }
+
+    @Override
+    public void processRow(ResultSet rs) throws SQLException {
+        builder.add(rs.getInt(1), rs.getLong(2));
+    }
+
+    public RecordBatch toBatch() {
+        return builder.build();
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.reconciliation;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+
+// Speedup curves of the parallel engines: every engine is run on executors of parallelism
+// 1..N and timed against its own parallelism-1 run, so the numbers show where an engine
+// stops scaling rather than how it compares to the others.
+//
+// Usage: ScalingBenchmark [maxParallelism] [FORK_JOIN|FIXED] [dataset file]
+// maxParallelism defaults to the available processors.
+public class ScalingBenchmark {
+
+    static final int WARMUP_RUNS = 2;
+    static final int MEASURED_RUNS = 5;
+
+    public enum Kind {
+        FORK_JOIN(ReconcilerExecutor::forkJoin),
+        FIXED(ReconcilerExecutor::fixed);
+
+        final IntFunction<ReconcilerExecutor> create;
+
+        Kind(IntFunction<ReconcilerExecutor> create) {
+            this.create = create;
+        }
+    }
+
+    static Map<String, Function<ReconcilerExecutor, Reconciler>> engines() {
+        Map<String, Function<ReconcilerExecutor, Reconciler>> engines = new LinkedHashMap<>();
+        engines.put("CAS Claim (input order)", CasClaimReconciler::new);
+        engines.put("CAS Claim (first come)", executor -> new CasClaimReconciler(executor, CasClaimReconciler.ClaimOrder.FIRST_COME));
+        engines.put("Hash Grid", HashGridReconciler::new);
+        engines.put("Deterministic Parallel Sweep", DeterministicParallelReconciler::new);
+        engines.put("Partitioned Sweep", executor -> new PartitionedReconciler(new SortMergeReconciler(), executor));
+        engines.put("Adaptive", AdaptiveReconciler::new);
+        // Row-oriented: parallel streams, moved onto the executor by withExecutor
+        engines.put("Sorted List Decimal-Safe", executor -> ParallelReconciliationBenchmark.sortedListDecimalSafeReconciler.withExecutor(executor));
+        return engines;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int maxParallelism = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        Kind kind = args.length > 1 ? Kind.valueOf(args[1]) : Kind.FORK_JOIN;
+        DatasetGenerator.Dataset dataset = args.length > 2
+                ? DatasetGenerator.Dataset.load(Path.of(args[2]))
+                : new DatasetGenerator().seed(42).records(100_000).scale(1).variance(1.5).partitionKeys(1000).generate();
+
+        System.out.println("Executor: " + kind + ", parallelism 1.." + maxParallelism
+                + ", " + dataset.side1.size + " x " + dataset.side2.size + " rows, "
+                + Runtime.getRuntime().availableProcessors() + " processors");
+        for (Map.Entry<String, Function<ReconcilerExecutor, Reconciler>> engine : engines().entrySet()) {
+            System.out.println();
+            System.out.println("[" + engine.getKey() + "]");
+            System.out.println(String.format("%11s %10s %8s %10s %8s", "parallelism", "ms", "speedup", "efficiency", "matched"));
+            double baseline = 0;
+            for (int p = 1; p <= maxParallelism; p++) {
+                try (ReconcilerExecutor executor = kind.create.apply(p)) {
+                    Reconciler reconciler = engine.getValue().apply(executor);
+                    MatchResult result = null;
+                    for (int run = 0; run < WARMUP_RUNS; run++) {
+                        result = run(reconciler, dataset);
+                    }
+                    double[] millis = new double[MEASURED_RUNS];
+                    for (int run = 0; run < MEASURED_RUNS; run++) {
+                        long start = System.nanoTime();
+                        result = run(reconciler, dataset);
+                        millis[run] = (System.nanoTime() - start) / 1e6;
+                    }
+                    Arrays.sort(millis);
+                    double median = millis[MEASURED_RUNS / 2];
+                    if (p == 1) {
+                        baseline = median;
+                    }
+                    double speedup = baseline / median;
+                    System.out.println(String.format("%11d %10.1f %7.2fx %9.0f%% %8d", p, median, speedup, speedup / p * 100, result.matched()));
+                }
+            }
+        }
+    }
+
+    private static MatchResult run(Reconciler reconciler, DatasetGenerator.Dataset dataset) {
+        MatchResult result = new MatchResult();
+        reconciler.reconcile(dataset.side1, dataset.side2, dataset.variance, result);
+        return result;
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.reconciliation;
+
+// Next-untaken pointers over slots [0, size) in both directions, the union-find style
+// skip lists behind every "nearest unclaimed" search: a run of taken slots is jumped in
+// near constant time however long it is, because pointers are compressed (path halving)
+// as they are followed.
+//
+// right[i] == i means slot i was never taken; otherwise slots i..right[i]-1 are all taken.
+// left is the same towards lower slots, shifted by one: left[i + 1] belongs to slot i.
+// right[size] and left[0] are sentinels that are never taken. Pointers only ever move
+// outwards, so a pointer that lost a racing write is stale but still correct: callers
+// whose claims live elsewhere (a CAS bitmap, see FreeSlots) may share one instance across
+// threads and treat the pointers as hints.
+final class SkipPointers {
+
+    private final int[] right;
+    private final int[] left;
+
+    SkipPointers(int size) {
+        this.right = new int[size + 1];
+        this.left = new int[size + 1];
+        for (int i = 0; i <= size; i++) {
+            right[i] = i;
+            left[i] = i;
+        }
+    }
+
+    void take(int slot) {
+        right[slot] = slot + 1;
+        left[slot + 1] = slot;
+    }
+
+    boolean isTaken(int slot) {
+        return right[slot] != slot;
+    }
+
+    // First untaken slot at or after i, size when there is none
+    int next(int i) {
+        while (right[i] != i) {
+            int further = right[right[i]];
+            right[i] = further;
+            i = further;
+        }
+        return i;
+    }
+
+    // Last untaken slot at or before i, -1 when there is none
+    int previous(int i) {
+        int p = i + 1;
+        while (left[p] != p) {
+            int further = left[left[p]];
+            left[p] = further;
+            p = further;
+        }
+        return p - 1;
+    }
+}
@@ -0,0 +1,176 @@
+package com.example.reconciliation;
+
+import java.util.List;
+
+// Sort-merge sweep: both sides are sorted by amount into primitive arrays and matched
+// with two pointers over a sliding window of width variance. No boxed Double keys and
+// no queue nodes, just a long[] and an int[] per side.
+// Optionally reports, after every unmatched record of either side, the nearest unmatched
+// amounts of the other side up to a distance as near misses (see NearMisses), found by the
+// same sweep.
+public class SortMergeReconciler implements Reconciler {
+
+    private final ReconciliationMetrics metrics;
+    private final int suggestions;
+    private final double suggestionDistance;
+
+    public SortMergeReconciler() {
+        this(ReconciliationMetrics.global("sortMerge"));
+    }
+
+    // Up to suggestions near misses per unmatched record, at most suggestionDistance away
+    public SortMergeReconciler(int suggestions, double suggestionDistance) {
+        this(ReconciliationMetrics.global("sortMerge"), suggestions, suggestionDistance);
+    }
+
+    SortMergeReconciler(ReconciliationMetrics metrics) {
+        this(metrics, 0, 0);
+    }
+
+    SortMergeReconciler(ReconciliationMetrics metrics, int suggestions, double suggestionDistance) {
+        if (suggestions < 0) {
+            throw new IllegalArgumentException("suggestions must not be negative: " + suggestions);
+        }
+        this.metrics = metrics;
+        this.suggestions = suggestions;
+        this.suggestionDistance = suggestionDistance;
+    }
+
+    @Override
+    public List<String> reconcile(List<Record> side1, List<Record> side2, double variance) {
+        return reconcile(RecordBatch.of(side1), RecordBatch.of(side2), variance);
+    }
+
+    @Override
+    public List<String> reconcile(RecordBatch side1, RecordBatch side2, double variance) {
+        MatchResult result = new MatchResult();
+        reconcile(side1, side2, variance, result);
+        return result.asStrings();
+    }
+
+    @Override
+    public void reconcile(RecordBatch side1, RecordBatch side2, double variance, MatchSink sink) {
+        boolean measured = metrics.enabled();
+        long t = System.nanoTime();
+        int scale = Math.max(side1.scale, side2.scale);
+        side1 = side1.rescale(scale);
+        side2 = side2.rescale(scale);
+        long tolerance = side1.tolerance(variance);
+
+        int n1 = side1.size;
+        int n2 = side2.size;
+        long[] amounts1 = new long[n1];
+        long[] amounts2 = new long[n2];
+        int[] order1 = side1.sortedOrder(amounts1);
+        int[] order2 = side2.sortedOrder(amounts2);
+        if (measured) {
+            t = metrics.phase(ReconciliationMetrics.Phase.INDEX_BUILD, t);
+        }
+
+        NearMisses nearMisses = suggestions > 0 ? new NearMisses(suggestions, side1.tolerance(suggestionDistance)) : null;
+        int[] partner = sweep(amounts1, amounts2, tolerance, nearMisses);
+        // matchOf[side1 row] = side2 row, or -1; -2 - h for an unmatched row with near-miss heap h
+        int[] matchOf = new int[n1];
+        boolean[] matched2 = new boolean[n2];
+        for (int i = 0; i < n1; i++) {
+            int j = partner[i];
+            matchOf[order1[i]] = j >= 0 ? order2[j] : -1;
+            if (j >= 0) {
+                matched2[j] = true;
+            }
+        }
+        if (nearMisses != null) {
+            nearMisses.finish();
+            for (int h = 0; h < nearMisses.side1.size(); h++) {
+                matchOf[order1[nearMisses.side1.owner(h)]] = -2 - h;
+            }
+        }
+        if (measured) {
+            t = metrics.phase(ReconciliationMetrics.Phase.MATCHING, t);
+        }
+
+        int[] unmatched2 = new int[n2];
+        int leftover = 0;
+        for (int k = 0; k < n2; k++) {
+            if (!matched2[k]) {
+                unmatched2[leftover++] = k;
+            }
+        }
+        if (measured) {
+            t = metrics.phase(ReconciliationMetrics.Phase.UNMATCHED, t);
+        }
+
+        sink.begin(scale);
+        long pairs = 0;
+        for (int i = 0; i < n1; i++) {
+            int m = matchOf[i];
+            if (m >= 0) {
+                sink.matchedPair(side1.ids[i], side1.amounts[i], side2.ids[m], side2.amounts[m]);
+                pairs++;
+            } else {
+                sink.unmatchedSide1(side1.ids[i], side1.amounts[i]);
+                for (int h = -2 - m, rank = 0; h >= 0 && rank < nearMisses.side1.count(h); rank++) {
+                    int row = order2[nearMisses.side1.slot(h, rank)];
+                    sink.nearMiss(side1.ids[i], side1.amounts[i], side2.ids[row], side2.amounts[row]);
+                }
+            }
+        }
+        // Side2 heaps were opened in ascending slot order, the order of this loop
+        int h2 = 0;
+        for (int u = 0; u < leftover; u++) {
+            int k = unmatched2[u];
+            int row = order2[k];
+            sink.unmatchedSide2(side2.ids[row], side2.amounts[row]);
+            if (nearMisses != null && h2 < nearMisses.side2.size() && nearMisses.side2.owner(h2) == k) {
+                for (int rank = 0; rank < nearMisses.side2.count(h2); rank++) {
+                    int row1 = order1[nearMisses.side2.slot(h2, rank)];
+                    sink.nearMiss(side1.ids[row1], side1.amounts[row1], side2.ids[row], side2.amounts[row]);
+                }
+                h2++;
+            }
+        }
+        if (measured) {
+            metrics.phase(ReconciliationMetrics.Phase.EMISSION, t);
+            metrics.outcomes(pairs, n1 - pairs, n2 - pairs);
+        }
+    }
+
+    // Two-pointer sweep over both sides sorted by amount; returns for every Side1 index
+    // the matched Side2 index (both in sorted order), or -1
+    static int[] sweep(long[] amounts1, long[] amounts2, long tolerance) {
+        return sweep(amounts1, amounts2, tolerance, null);
+    }
+
+    // The same, reporting every decided unmatched Side1 and unclaimed Side2 index to
+    // nearMisses, unless that is null
+    static int[] sweep(long[] amounts1, long[] amounts2, long tolerance, NearMisses nearMisses) {
+        int[] partner = new int[amounts1.length];
+        int j = 0;
+        for (int i = 0; i < amounts1.length; i++) {
+            long a = amounts1[i];
+            // Side2 amounts left of the window can no longer match any later Side1 amount
+            while (j < amounts2.length && a - amounts2[j] > tolerance) {
+                if (nearMisses != null) {
+                    nearMisses.unclaimed(j, amounts2[j]);
+                }
+                j++;
+            }
+            // Taking the lowest Side2 amount still in the window never takes a candidate away
+            // from a later (larger) Side1 amount that it could not also have used
+            if (j < amounts2.length && amounts2[j] - a <= tolerance) {
+                partner[i] = j++;
+            } else {
+                partner[i] = -1;
+                if (nearMisses != null) {
+                    nearMisses.unmatched(i, a);
+                }
+            }
+        }
+        if (nearMisses != null) {
+            for (; j < amounts2.length; j++) {
+                nearMisses.unclaimed(j, amounts2[j]);
+            }
+        }
+        return partner;
+    }
+}
@@ -0,0 +1,110 @@
+package com.example.reconciliation;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// One sorted run of an external sort, written and read sequentially through a FileChannel
+// with a fixed-size buffer.
+//
+// File layout (little endian): int magic, int scale, long rows, then rows * (long amount
+// in minor units, int id) = 12 bytes per row, ascending by amount.
+final class SortedRunFile {
+
+    static final int ROW_BYTES = 12;
+    private static final int MAGIC = 0x52554E31;
+    private static final int HEADER_BYTES = 16;
+
+    private SortedRunFile() {
+    }
+
+    static ByteBuffer buffer(int bytes) {
+        return ChannelIO.buffer(Math.max(HEADER_BYTES, bytes / ROW_BYTES * ROW_BYTES));
+    }
+
+    // Appends rows in the order they are given; callers hand them over sorted
+    static final class Writer implements Closeable {
+        private final FileChannel channel;
+        private final ByteBuffer buffer;
+        private final int scale;
+        private long rows;
+
+        Writer(Path file, int scale, ByteBuffer buffer) throws IOException {
+            this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+            this.buffer = buffer.clear();
+            this.scale = scale;
+            channel.position(HEADER_BYTES);
+        }
+
+        void write(long amount, int id) throws IOException {
+            if (buffer.remaining() < ROW_BYTES) {
+                ChannelIO.drain(channel, buffer);
+            }
+            buffer.putLong(amount).putInt(id);
+            rows++;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                ChannelIO.drain(channel, buffer);
+                buffer.putInt(MAGIC).putInt(scale).putLong(rows).flip();
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer, HEADER_BYTES - buffer.remaining());
+                }
+                buffer.clear();
+            } finally {
+                channel.close();
+            }
+        }
+    }
+
+    // Cursor over a run: next() advances, amount and id hold the current row
+    static final class Reader implements Closeable {
+        private final FileChannel channel;
+        private final ByteBuffer buffer;
+        final int scale;
+        final long rows;
+        private long remaining;
+        long amount;
+        int id;
+
+        Reader(Path file, ByteBuffer buffer) throws IOException {
+            this.channel = FileChannel.open(file, StandardOpenOption.READ);
+            this.buffer = buffer.clear();
+            try {
+                ChannelIO.fill(channel, buffer, HEADER_BYTES, "Sorted run " + file);
+                if (buffer.getInt() != MAGIC) {
+                    throw new IOException("Not a sorted run file: " + file);
+                }
+            } catch (IOException e) {
+                channel.close();
+                throw e;
+            }
+            this.scale = buffer.getInt();
+            this.rows = buffer.getLong();
+            this.remaining = rows;
+        }
+
+        boolean next() throws IOException {
+            if (remaining == 0) {
+                return false;
+            }
+            if (buffer.remaining() < ROW_BYTES) {
+                ChannelIO.fill(channel, buffer, ROW_BYTES, "Sorted run");
+            }
+            amount = buffer.getLong();
+            id = buffer.getInt();
+            remaining--;
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
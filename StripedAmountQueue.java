@@ -0,0 +1,129 @@
+package com.example.reconciliation;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+// The Side2 records of one amount, handed out once each to parallel probes. Replaces a
+// ConcurrentLinkedQueue per amount, whose poll is a CAS on a single head that every
+// thread retries when thousands of Side1 records share the amount (fees, round amounts).
+//
+// Records sit in an array and are claimed with fetch-and-add on a cursor: one atomic
+// instruction per claim and no retry loop. Groups of HOT_GROUP_SIZE or more, detected
+// while the index is built, are also split into stripes with a cursor each, on separate
+// cache lines; a thread starts on its own stripe and only moves on when that one is
+// drained, so threads hitting a hot amount mostly touch different memory.
+public final class StripedAmountQueue<T> {
+
+    static final int HOT_GROUP_SIZE = 64;
+    // Cursors 16 ints (64 bytes) apart, so two stripes never share a cache line
+    private static final int PAD = 16;
+
+    private final T[] items;
+    // Stripe s covers items[bounds[s], bounds[s + 1])
+    private final int[] bounds;
+    // Next unclaimed position of stripe s at index s * PAD; may run past its bound
+    private final AtomicIntegerArray cursors;
+    private volatile boolean drained;
+
+    private StripedAmountQueue(T[] items, int stripes) {
+        this.items = items;
+        this.bounds = new int[stripes + 1];
+        this.cursors = new AtomicIntegerArray((stripes - 1) * PAD + 1);
+        for (int s = 0; s <= stripes; s++) {
+            bounds[s] = (int) ((long) items.length * s / stripes);
+        }
+        for (int s = 0; s < stripes; s++) {
+            cursors.set(s * PAD, bounds[s]);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> StripedAmountQueue<T> of(List<T> group) {
+        return new StripedAmountQueue<>((T[]) group.toArray(), stripes(group.size()));
+    }
+
+    // Rows of the side grouped by minor-unit amount, each group a queue striped by its size
+    // and holding its rows in input order
+    static NavigableMap<Long, StripedAmountQueue<Integer>> index(RecordBatch side) {
+        long[] sorted = new long[side.size];
+        int[] order = side.sortedOrder(sorted);
+        NavigableMap<Long, StripedAmountQueue<Integer>> index = new TreeMap<>();
+        for (int from = 0; from < order.length; ) {
+            int to = from + 1;
+            while (to < order.length && sorted[to] == sorted[from]) {
+                to++;
+            }
+            Arrays.sort(order, from, to);
+            Integer[] rows = new Integer[to - from];
+            for (int k = 0; k < rows.length; k++) {
+                rows[k] = order[from + k];
+            }
+            index.put(sorted[from], new StripedAmountQueue<>(rows, stripes(rows.length)));
+            from = to;
+        }
+        return index;
+    }
+
+    private static int stripes(int size) {
+        return size < HOT_GROUP_SIZE ? 1 : Math.min(maxStripes(), size / HOT_GROUP_SIZE);
+    }
+
+    // One stripe per thread of a parallel stream started here: the workers of the pool the
+    // caller runs in (see ReconcilerExecutor.call), or of the common pool, plus the caller
+    private static int maxStripes() {
+        ForkJoinPool pool = ForkJoinTask.inForkJoinPool() ? ForkJoinTask.getPool() : ForkJoinPool.commonPool();
+        return pool.getParallelism() + 1;
+    }
+
+    int stripes() {
+        return bounds.length - 1;
+    }
+
+    // Claims an unclaimed record, null when none is left
+    public T poll() {
+        if (drained) {
+            return null;
+        }
+        int stripes = stripes();
+        int home = stripes == 1 ? 0 : (int) (Thread.currentThread().getId() % stripes);
+        for (int k = 0; k < stripes; k++) {
+            int s = home + k < stripes ? home + k : home + k - stripes;
+            int end = bounds[s + 1];
+            // Read before incrementing, so drained stripes do not keep counting up
+            if (cursors.get(s * PAD) < end) {
+                int slot = cursors.getAndIncrement(s * PAD);
+                if (slot < end) {
+                    return items[slot];
+                }
+            }
+        }
+        drained = true;
+        return null;
+    }
+
+    public boolean isEmpty() {
+        if (drained) {
+            return true;
+        }
+        for (int s = 0; s < stripes(); s++) {
+            if (cursors.get(s * PAD) < bounds[s + 1]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Records nobody claimed; call once the probes are done
+    public Stream<T> remaining() {
+        return IntStream.range(0, stripes())
+                .boxed()
+                .flatMap(s -> Arrays.stream(items, Math.min(cursors.get(s * PAD), bounds[s + 1]), bounds[s + 1]));
+    }
+}
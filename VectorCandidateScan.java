@@ -0,0 +1,50 @@
+package com.example.reconciliation;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+// SIMD kernel of CandidateScan; only loaded when the incubator module is present.
+// Per register: |amount - target| for every lane, a mask of lanes within tolerance and
+// unclaimed (from the claim bitmap), the masked minimum and the first lane holding it.
+// A register only replaces the best so far with a strictly smaller difference, so the
+// pick is the same first-smallest slot the scalar loop finds.
+final class VectorCandidateScan {
+
+    private static final VectorSpecies<Long> SPECIES = LongVector.SPECIES_PREFERRED;
+    private static final int LANES = SPECIES.length();
+
+    private VectorCandidateScan() {
+    }
+
+    static boolean supported() {
+        return LANES >= 2;
+    }
+
+    static int nearestUnclaimed(long[] amounts, AtomicLongArray claimed, int from, long target, long tolerance) {
+        LongVector probe = LongVector.broadcast(SPECIES, target);
+        int best = -1;
+        long minDiff = Long.MAX_VALUE;
+        int i = from;
+        for (int bound = amounts.length - LANES; i <= bound; i += LANES) {
+            LongVector diff = LongVector.fromArray(SPECIES, amounts, i).sub(probe).abs();
+            VectorMask<Long> candidates = diff.compare(VectorOperators.LE, tolerance)
+                    .andNot(VectorMask.fromLong(SPECIES, CandidateScan.claimBits(claimed, i, LANES)));
+            if (candidates.anyTrue()) {
+                long min = diff.reduceLanes(VectorOperators.MIN, candidates);
+                if (min < minDiff) {
+                    minDiff = min;
+                    best = i + diff.compare(VectorOperators.EQ, min).and(candidates).firstTrue();
+                }
+            }
+            long last = amounts[i + LANES - 1];
+            if (last > target && (last - target > tolerance || last - target >= minDiff)) {
+                return best; // sorted: the rest of the window is only further away
+            }
+        }
+        return CandidateScan.nearestUnclaimed(amounts, claimed, i, best, minDiff, target, tolerance);
+    }
+}
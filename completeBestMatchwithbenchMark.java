@@ -1,85 +1,78 @@
-import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.stream.Collectors;
-
-// Record class
-class Record {
-    int id;
-    double amount;
-
-    Record(int id, double amount) {
-        this.id = id;
-        this.amount = amount;
-    }
-}
+package com.example.reconciliation;
+
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 
-// Functional interface for reconcilers
-@FunctionalInterface
-interface Reconciler {
-    List<String> reconcile(List<Record> side1, List<Record> side2, double variance);
-}
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.IntStream;
 
 public class ParallelReconciliationBenchmark {
 
     // Reconciler 1: Linear Scan
-    public static Reconciler linearScanReconciler = (side1, side2, variance) -> {
-        NavigableMap<Double, Queue<Record>> side2Map = new TreeMap<>();
-        for (Record s2 : side2) {
-            side2Map.computeIfAbsent(s2.amount, k -> new ConcurrentLinkedQueue<>()).offer(s2);
-        }
-
-        List<String> results = side1.parallelStream().map(s1 -> {
-            Record bestMatch = null;
-            double minDiff = Double.MAX_VALUE;
-            Double bestKey = null;
-
-            for (Map.Entry<Double, Queue<Record>> entry : side2Map.entrySet()) {
-                if (Math.abs(s1.amount - entry.getKey()) <= variance && !entry.getValue().isEmpty()) {
-                    double diff = Math.abs(s1.amount - entry.getKey());
-                    if (diff < minDiff) {
-                        minDiff = diff;
-                        bestKey = entry.getKey();
-                    }
+    // Like the other engines it compares minor-unit amounts against the scaled tolerance,
+    // so a difference of exactly variance matches whatever its binary rounding
+    public static Reconciler linearScanReconciler = (side1, side2, variance, sink) -> {
+        int scale = Math.max(side1.scale, side2.scale);
+        RecordBatch s1 = side1.rescale(scale);
+        RecordBatch s2 = side2.rescale(scale);
+        long tolerance = s1.tolerance(variance);
+        NavigableMap<Long, StripedAmountQueue<Integer>> side2Map = StripedAmountQueue.index(s2);
+
+        int[] matchOf = new int[s1.size];
+        IntStream.range(0, s1.size).parallel().forEach(i -> {
+            long amount = s1.amounts[i];
+            long minDiff = Long.MAX_VALUE;
+            Long bestKey = null;
+
+            for (Map.Entry<Long, StripedAmountQueue<Integer>> entry : side2Map.entrySet()) {
+                long diff = Math.abs(amount - entry.getKey());
+                if (diff <= tolerance && diff < minDiff && !entry.getValue().isEmpty()) {
+                    minDiff = diff;
+                    bestKey = entry.getKey();
                 }
             }
 
-            if (bestKey != null) {
-                bestMatch = side2Map.get(bestKey).poll();
-            }
-
-            return bestMatch != null
-                    ? "Side1: " + s1.id + " (" + s1.amount + ") <-> Side2: " + bestMatch.id + " (" + bestMatch.amount + ")"
-                    : "Side1: " + s1.id + " (" + s1.amount + ") <-> No Match";
-        }).collect(Collectors.toList());
+            Integer bestMatch = bestKey != null ? side2Map.get(bestKey).poll() : null;
+            matchOf[i] = bestMatch != null ? bestMatch : -1;
+        });
 
-        List<String> unmatched = side2Map.values().parallelStream()
-                .flatMap(Collection::stream)
-                .map(s2 -> "Side2: " + s2.id + " (" + s2.amount + ") <-> No Match")
-                .collect(Collectors.toList());
-
-        results.addAll(unmatched);
-        return results;
+        sink.begin(scale);
+        emitSide1(s1, s2, matchOf, sink);
+        side2Map.values().forEach(queue -> queue.remaining().forEach(k -> sink.unmatchedSide2(s2.ids[k], s2.amounts[k])));
     };
 
     // Reconciler 2: Optimized SubMap
-    public static Reconciler optimizedSubMapReconciler = (side1, side2, variance) -> {
-        NavigableMap<Double, Queue<Record>> side2Map = new TreeMap<>();
-        for (Record s2 : side2) {
-            side2Map.computeIfAbsent(s2.amount, k -> new ConcurrentLinkedQueue<>()).offer(s2);
+    static final ReconciliationMetrics subMapMetrics = ReconciliationMetrics.global("optimizedSubMap");
+
+    public static Reconciler optimizedSubMapReconciler = (side1, side2, variance, sink) -> {
+        boolean measured = subMapMetrics.enabled();
+        long t = System.nanoTime();
+        int scale = Math.max(side1.scale, side2.scale);
+        RecordBatch s1 = side1.rescale(scale);
+        RecordBatch s2 = side2.rescale(scale);
+        long tolerance = s1.tolerance(variance);
+        NavigableMap<Long, StripedAmountQueue<Integer>> side2Map = StripedAmountQueue.index(s2);
+        if (measured) {
+            t = subMapMetrics.phase(ReconciliationMetrics.Phase.INDEX_BUILD, t);
         }
 
-        List<String> results = side1.parallelStream().map(s1 -> {
-            Record bestMatch = null;
-            double minDiff = Double.MAX_VALUE;
-            Double bestKey = null;
+        int[] matchOf = new int[s1.size];
+        IntStream.range(0, s1.size).parallel().forEach(i -> {
+            long amount = s1.amounts[i];
+            long minDiff = Long.MAX_VALUE;
+            Long bestKey = null;
 
-            NavigableMap<Double, Queue<Record>> candidates =
-                    side2Map.subMap(s1.amount - variance, true, s1.amount + variance, true);
+            NavigableMap<Long, StripedAmountQueue<Integer>> candidates =
+                    side2Map.subMap(amount - tolerance, true, amount + tolerance, true);
 
-            for (Map.Entry<Double, Queue<Record>> entry : candidates.entrySet()) {
+            int window = 0;
+            for (Map.Entry<Long, StripedAmountQueue<Integer>> entry : candidates.entrySet()) {
+                window++;
                 if (!entry.getValue().isEmpty()) {
-                    double diff = Math.abs(s1.amount - entry.getKey());
+                    long diff = Math.abs(amount - entry.getKey());
                     if (diff < minDiff) {
                         minDiff = diff;
                         bestKey = entry.getKey();
@@ -87,89 +80,347 @@ public class ParallelReconciliationBenchmark {
                 }
             }
 
-            if (bestKey != null) {
-                bestMatch = side2Map.get(bestKey).poll();
+            Integer bestMatch = bestKey != null ? side2Map.get(bestKey).poll() : null;
+            matchOf[i] = bestMatch != null ? bestMatch : -1;
+            if (measured) {
+                subMapMetrics.candidateWindow(window);
             }
+        });
+        if (measured) {
+            t = subMapMetrics.phase(ReconciliationMetrics.Phase.MATCHING, t);
+        }
 
-            return bestMatch != null
-                    ? "Side1: " + s1.id + " (" + s1.amount + ") <-> Side2: " + bestMatch.id + " (" + bestMatch.amount + ")"
-                    : "Side1: " + s1.id + " (" + s1.amount + ") <-> No Match";
-        }).collect(Collectors.toList());
-
-        List<String> unmatched = side2Map.values().parallelStream()
-                .flatMap(Collection::stream)
-                .map(s2 -> "Side2: " + s2.id + " (" + s2.amount + ") <-> No Match")
-                .collect(Collectors.toList());
+        int[] unmatched2 = side2Map.values().stream().flatMap(StripedAmountQueue::remaining).mapToInt(Integer::intValue).toArray();
+        if (measured) {
+            t = subMapMetrics.phase(ReconciliationMetrics.Phase.UNMATCHED, t);
+        }
 
-        results.addAll(unmatched);
-        return results;
+        sink.begin(scale);
+        int pairs = emitSide1(s1, s2, matchOf, sink);
+        for (int k : unmatched2) {
+            sink.unmatchedSide2(s2.ids[k], s2.amounts[k]);
+        }
+        if (measured) {
+            subMapMetrics.phase(ReconciliationMetrics.Phase.EMISSION, t);
+            subMapMetrics.outcomes(pairs, s1.size - pairs, s2.size - pairs);
+        }
     };
 
     // Reconciler 3: Sorted List Decimal-safe
-    public static Reconciler sortedListDecimalSafeReconciler = (side1, side2, variance) -> {
-        List<Record> sortedSide2 = new ArrayList<>(side2);
-        sortedSide2.sort(Comparator.comparingDouble(r -> r.amount));
+    // Amounts are compared as scaled longs, so a difference exactly equal to variance
+    // always matches instead of depending on binary rounding. Used Side2 entries are bits
+    // in a claim bitmap and skipped through next-free pointers (FreeSlots), so duplicate
+    // runs that are already used cost near nothing to step over.
+    public static Reconciler sortedListDecimalSafeReconciler = (side1, side2, variance, sink) -> {
+        int scale = Math.max(side1.scale, side2.scale);
+        RecordBatch s1 = side1.rescale(scale);
+        RecordBatch s2 = side2.rescale(scale);
+        long tolerance = s1.tolerance(variance);
+        long[] minor2 = new long[s2.size];
+        int[] order = s2.sortedOrder(minor2);
+
+        FreeSlots used = new FreeSlots(minor2.length);
+
+        int[] matchOf = new int[s1.size];
+        IntStream.range(0, s1.size).parallel().forEach(i -> {
+            int best = used.nearest(minor2, s1.amounts[i], tolerance);
+            // Another thread may claim the candidate first; then take the next nearest
+            while (best >= 0 && !used.claim(best)) {
+                best = used.nearest(minor2, s1.amounts[i], tolerance);
+            }
+            matchOf[i] = best >= 0 ? order[best] : -1;
+        });
+
+        sink.begin(scale);
+        emitSide1(s1, s2, matchOf, sink);
+        for (int k = 0; k < minor2.length; k++) {
+            if (!used.isClaimed(k)) {
+                sink.unmatchedSide2(s2.ids[order[k]], minor2[k]);
+            }
+        }
+    };
+
+    // Side1 outcomes in input order, matchOf[side1 row] = side2 row or -1; returns the pairs
+    private static int emitSide1(RecordBatch s1, RecordBatch s2, int[] matchOf, MatchSink sink) {
+        int pairs = 0;
+        for (int i = 0; i < s1.size; i++) {
+            int m = matchOf[i];
+            if (m >= 0) {
+                sink.matchedPair(s1.ids[i], s1.amounts[i], s2.ids[m], s2.amounts[m]);
+                pairs++;
+            } else {
+                sink.unmatchedSide1(s1.ids[i], s1.amounts[i]);
+            }
+        }
+        return pairs;
+    }
+
+    // Reconciler 4: Lock-free CAS claim, pairing like the sequential ReconciliationFixed
+    public static Reconciler casClaimReconciler = new CasClaimReconciler();
+
+    // Reconciler 5: Sort-Merge Sweep over primitive sorted arrays
+    public static Reconciler sortMergeSweepReconciler = new SortMergeReconciler();
+
+    // Reconciler 6: Sort-Merge Sweep on off-heap side storage
+    public static Reconciler offHeapReconciler = new OffHeapReconciler();
 
-        Map<Record, Boolean> used = new ConcurrentHashMap<>();
+    // Reconciler 7: Hash-grid buckets of width variance, for tight tolerances
+    public static Reconciler hashGridReconciler = new HashGridReconciler();
 
-        List<String> results = side1.parallelStream().map(s1 -> {
-            Record bestMatch = null;
-            double minDiff = Double.MAX_VALUE;
+    // Reconciler 8: Optimal assignment (most pairs, then least total difference)
+    public static Reconciler optimalAssignmentReconciler = new OptimalAssignmentReconciler();
 
-            for (Record s2 : sortedSide2) {
-                if (used.containsKey(s2)) continue;
+    // Reconciler 9: Sort-Merge Sweep per partition key, partitions run as independent ForkJoin tasks
+    public static Reconciler partitionedSweepReconciler = new PartitionedReconciler(sortMergeSweepReconciler);
 
-                double diff = Math.abs(s1.amount - s2.amount);
-                if (diff <= variance && diff < minDiff) {
-                    bestMatch = s2;
+    // Reconciler 10: Sort-Merge Sweep, then groups of up to 3 residual records per partition key
+    public static Reconciler aggregateReconciler = new PartitionedReconciler(new AggregateReconciler());
+
+    // Reconciler 11: Sort-Merge Sweep over sorted runs spilled to disk, bounded memory
+    public static Reconciler externalSortReconciler = new ExternalSortReconciler();
+
+    // Reconciler 12: Picks sort-merge, hash grid or CAS claim from a sample of both sides
+    public static Reconciler adaptiveReconciler = new AdaptiveReconciler();
+
+    // Reconciler 13: Sort-Merge Sweep over amount ranges in parallel, pairing exactly like a sequential run
+    public static Reconciler deterministicReconciler = new DeterministicParallelReconciler();
+
+    // Reconciler 14: Lock-free CAS claim in arrival order, each probe a vectorized window scan
+    public static Reconciler casClaimFirstComeReconciler =
+            new CasClaimReconciler(ReconcilerExecutor.commonPool(), CasClaimReconciler.ClaimOrder.FIRST_COME);
+
+    // ReconciliationFixed.reconcile (temp.java) in minor units: every Side1 record, in input
+    // order, takes the closest unmatched Side2 record within tolerance, the first one in Side2
+    // input order on ties. matchOf[side1 row] = side2 row, or -1
+    static int[] sequentialMatches(RecordBatch s1, RecordBatch s2, long tolerance) {
+        int[] matchOf = new int[s1.size];
+        boolean[] taken = new boolean[s2.size];
+        for (int i = 0; i < s1.size; i++) {
+            int best = -1;
+            long minDiff = Long.MAX_VALUE;
+            for (int j = 0; j < s2.size; j++) {
+                long diff = Math.abs(s1.amounts[i] - s2.amounts[j]);
+                if (!taken[j] && diff <= tolerance && diff < minDiff) {
+                    best = j;
                     minDiff = diff;
-                } else if (s2.amount - s1.amount > variance) {
-                    break;
                 }
             }
+            matchOf[i] = best;
+            if (best >= 0) {
+                taken[best] = true;
+            }
+        }
+        return matchOf;
+    }
 
-            if (bestMatch != null) {
-                used.put(bestMatch, true);
-                return "Side1: " + s1.id + " (" + s1.amount + ") <-> Side2: " + bestMatch.id + " (" + bestMatch.amount + ")";
+    // CasClaimReconciler (INPUT_ORDER) against the sequential rule on small random sides with
+    // many equal amounts, on one and on four threads; throws on the first input where the
+    // match count or any pair differs. Returns the number of inputs checked.
+    static int verifyCasClaim(long seed, int inputs) {
+        Random random = new Random(seed);
+        try (ReconcilerExecutor single = ReconcilerExecutor.forkJoin(1);
+             ReconcilerExecutor four = ReconcilerExecutor.forkJoin(4)) {
+            for (int input = 0; input < inputs; input++) {
+                int range = 1 + random.nextInt(200);
+                RecordBatch s1 = randomSide(random, 1 + random.nextInt(200), range);
+                RecordBatch s2 = randomSide(random, 1 + random.nextInt(200), range);
+                double variance = random.nextInt(5) * 0.5;
+                int[] expected = sequentialMatches(s1, s2, s1.tolerance(variance));
+                long expectedPairs = Arrays.stream(expected).filter(m -> m >= 0).count();
+                for (ReconcilerExecutor executor : new ReconcilerExecutor[] {single, four}) {
+                    MatchResult result = new MatchResult();
+                    new CasClaimReconciler(executor).reconcile(s1, s2, variance, result);
+                    // Side ids are row numbers
+                    int[] actual = new int[s1.size];
+                    Arrays.fill(actual, -1);
+                    for (int row = 0; row < result.size(); row++) {
+                        if (result.kind(row) == MatchResult.PAIR) {
+                            actual[result.id1(row)] = result.id2(row);
+                        }
+                    }
+                    if (result.matched() != expectedPairs || !Arrays.equals(actual, expected)) {
+                        throw new IllegalStateException("CAS claim paired input " + input + " of seed " + seed + " differently from"
+                                + " ReconciliationFixed: " + result.matched() + " pairs, expected " + expectedPairs);
+                    }
+                }
+            }
+        }
+        return inputs;
+    }
+
+    // The sort-merge sweep run sequentially over both sides sorted by (amount, id), emitting
+    // what DeterministicParallelReconciler emits: Side1 outcomes in input order, then the
+    // unmatched Side2 records in sorted order
+    static MatchResult sequentialSweep(RecordBatch s1, RecordBatch s2, long tolerance) {
+        int[] order1 = byAmountThenId(s1);
+        int[] order2 = byAmountThenId(s2);
+        int[] matchOf = new int[s1.size];
+        Arrays.fill(matchOf, -1);
+        boolean[] matched2 = new boolean[s2.size];
+        int j = 0;
+        for (int i : order1) {
+            while (j < order2.length && s1.amounts[i] - s2.amounts[order2[j]] > tolerance) {
+                j++;
+            }
+            if (j < order2.length && s2.amounts[order2[j]] - s1.amounts[i] <= tolerance) {
+                matchOf[i] = order2[j];
+                matched2[j++] = true;
+            }
+        }
+        MatchResult result = new MatchResult();
+        result.begin(s1.scale);
+        for (int i = 0; i < s1.size; i++) {
+            if (matchOf[i] >= 0) {
+                result.matchedPair(s1.ids[i], s1.amounts[i], s2.ids[matchOf[i]], s2.amounts[matchOf[i]]);
             } else {
-                return "Side1: " + s1.id + " (" + s1.amount + ") <-> No Match";
+                result.unmatchedSide1(s1.ids[i], s1.amounts[i]);
             }
-        }).collect(Collectors.toList());
+        }
+        for (int k = 0; k < order2.length; k++) {
+            if (!matched2[k]) {
+                result.unmatchedSide2(s2.ids[order2[k]], s2.amounts[order2[k]]);
+            }
+        }
+        return result;
+    }
 
-        sortedSide2.stream()
-                .filter(s2 -> !used.containsKey(s2))
-                .map(s2 -> "Side2: " + s2.id + " (" + s2.amount + ") <-> No Match")
-                .forEach(results::add);
+    private static int[] byAmountThenId(RecordBatch side) {
+        return IntStream.range(0, side.size).boxed()
+                .sorted(Comparator.<Integer>comparingLong(i -> side.amounts[i]).thenComparingInt(i -> side.ids[i]))
+                .mapToInt(Integer::intValue).toArray();
+    }
 
-        return results;
-    };
+    // DeterministicParallelReconciler against sequentialSweep on random sides with shuffled
+    // ids and many equal amounts, on pools of 1, 2, 3, 4 and 8 threads; throws on the first
+    // outcome row that differs in kind, id or amount. Returns the number of inputs checked.
+    static int verifyDeterministic(long seed, int inputs) {
+        Random random = new Random(seed);
+        int[] poolSizes = {1, 2, 3, 4, 8};
+        for (int input = 0; input < inputs; input++) {
+            int range = 1 + random.nextInt(5_000);
+            RecordBatch s1 = shuffledIds(random, randomSide(random, random.nextInt(3_000), range));
+            RecordBatch s2 = shuffledIds(random, randomSide(random, random.nextInt(3_000), range));
+            double variance = random.nextInt(20) * 0.5;
+            MatchResult expected = sequentialSweep(s1, s2, s1.tolerance(variance));
+            for (int threads : poolSizes) {
+                MatchResult actual = new MatchResult();
+                try (ReconcilerExecutor executor = ReconcilerExecutor.forkJoin(threads)) {
+                    new DeterministicParallelReconciler(executor).reconcile(s1, s2, variance, actual);
+                }
+                int row = firstDifference(expected, actual);
+                if (row >= 0) {
+                    throw new IllegalStateException("Deterministic sweep on " + threads + " threads differs from the sequential sweep"
+                            + " at outcome row " + row + " of input " + input + " of seed " + seed);
+                }
+            }
+        }
+        return inputs;
+    }
+
+    // First row where the two results differ, -1 when they are identical
+    private static int firstDifference(MatchResult a, MatchResult b) {
+        for (int row = 0; row < Math.min(a.size(), b.size()); row++) {
+            if (a.kind(row) != b.kind(row) || a.id1(row) != b.id1(row) || a.amount1(row) != b.amount1(row)
+                    || a.id2(row) != b.id2(row) || a.amount2(row) != b.amount2(row)) {
+                return row;
+            }
+        }
+        return a.size() == b.size() && a.scale() == b.scale() ? -1 : Math.min(a.size(), b.size());
+    }
+
+    // The side with its ids permuted, so ties by id do not follow input order
+    private static RecordBatch shuffledIds(Random random, RecordBatch side) {
+        int[] ids = side.ids.clone();
+        for (int k = ids.length - 1; k > 0; k--) {
+            int swap = random.nextInt(k + 1);
+            int id = ids[k];
+            ids[k] = ids[swap];
+            ids[swap] = id;
+        }
+        return new RecordBatch(ids, side.amounts, side.scale);
+    }
+
+    // Amounts 0.0 .. (range - 1) / 10 at scale 1, ids 0 .. rows - 1
+    private static RecordBatch randomSide(Random random, int rows, int range) {
+        RecordBatch.Builder builder = new RecordBatch.Builder(1, rows);
+        for (int id = 0; id < rows; id++) {
+            builder.add(id, random.nextInt(range));
+        }
+        return builder.build();
+    }
 
     // Benchmark runner
     public static void benchmark(Reconciler reconciler, String label, List<Record> side1, List<Record> side2, double variance) {
         long start = System.currentTimeMillis();
         List<String> matches = reconciler.reconcile(side1, side2, variance);
         long end = System.currentTimeMillis();
+        report(label, end - start, matches);
+    }
 
-        System.out.println("[" + label + "] Execution Time: " + (end - start) + " ms");
-        System.out.println("[" + label + "] Total Matches: " + matches.size());
-        matches.stream().limit(5).forEach(System.out::println);
-        System.out.println();
+    // Columnar runs collect into a MatchResult, so only the preview lines are ever formatted
+    public static void benchmark(Reconciler reconciler, String label, RecordBatch side1, RecordBatch side2, double variance) {
+        long start = System.currentTimeMillis();
+        MatchResult result = new MatchResult();
+        reconciler.reconcile(side1, side2, variance, result);
+        long end = System.currentTimeMillis();
+        report(label + " / columnar", end - start, result.size(), result.matched(), result.asStrings());
     }
 
-    // Main method
-    public static void main(String[] args) {
-        List<Record> side1 = new ArrayList<>();
-        List<Record> side2 = new ArrayList<>();
+    private static void report(String label, long elapsedMillis, List<String> matches) {
+        report(label, elapsedMillis, matches.size(), matches.stream().filter(m -> m.contains("<-> Side2:")).count(), matches);
+    }
 
-        for (int i = 1; i <= 100_000; i++) {
-            side1.add(new Record(i, Math.round(Math.random() * 1000 * 10.0) / 10.0));
-            side2.add(new Record(100000 + i, Math.round(Math.random() * 1000 * 10.0) / 10.0));
-        }
+    private static void report(String label, long elapsedMillis, int total, long matched, List<String> matches) {
+        System.out.println("[" + label + "] Execution Time: " + elapsedMillis + " ms");
+        System.out.println("[" + label + "] Total Matches: " + total);
+        System.out.println("[" + label + "] Matched Pairs: " + matched);
+        matches.stream().limit(5).forEach(System.out::println);
+        System.out.println();
+    }
 
-        double variance = 1.5;
+    // Main method; pass a file written by DatasetGenerator.Dataset.save to replay a dataset
+    public static void main(String[] args) throws IOException {
+        SimpleMeterRegistry meters = new SimpleMeterRegistry();
+        Metrics.addRegistry(meters);
+        DatasetGenerator.Dataset dataset = args.length > 0
+                ? DatasetGenerator.Dataset.load(Path.of(args[0]))
+                : new DatasetGenerator().seed(42).records(100_000).scale(1).variance(1.5).partitionKeys(1000).generate();
+        RecordBatch batch1 = dataset.side1;
+        RecordBatch batch2 = dataset.side2;
+        List<Record> side1 = batch1.toRecords();
+        List<Record> side2 = batch2.toRecords();
+        double variance = dataset.variance;
+
+        System.out.println("[CAS Claim] Same pairs as sequential ReconciliationFixed on " + verifyCasClaim(42, 500) + " random inputs");
+        System.out.println("[Deterministic Parallel Sweep] Same outcomes as the sequential sweep on " + verifyDeterministic(42, 100)
+                + " random inputs and 1 to 8 threads");
+        System.out.println();
 
         benchmark(linearScanReconciler, "Linear Scan", side1, side2, variance);
         benchmark(optimizedSubMapReconciler, "Optimized SubMap", side1, side2, variance);
         benchmark(sortedListDecimalSafeReconciler, "Sorted List Decimal-Safe", side1, side2, variance);
+        benchmark(casClaimReconciler, "CAS Claim", side1, side2, variance);
+        benchmark(sortMergeSweepReconciler, "Sort-Merge Sweep", side1, side2, variance);
+        benchmark(hashGridReconciler, "Hash Grid", side1, side2, variance);
+        benchmark(optimalAssignmentReconciler, "Optimal Assignment", side1, side2, variance);
+
+        benchmark(casClaimReconciler, "CAS Claim", batch1, batch2, variance);
+        benchmark(casClaimFirstComeReconciler, "CAS Claim First-Come", batch1, batch2, variance);
+        benchmark(sortMergeSweepReconciler, "Sort-Merge Sweep", batch1, batch2, variance);
+        benchmark(offHeapReconciler, "Off-Heap Sweep", batch1, batch2, variance);
+        benchmark(hashGridReconciler, "Hash Grid", batch1, batch2, variance);
+        benchmark(optimalAssignmentReconciler, "Optimal Assignment", batch1, batch2, variance);
+        benchmark(externalSortReconciler, "External Sort", batch1, batch2, variance);
+        benchmark(deterministicReconciler, "Deterministic Parallel Sweep", batch1, batch2, variance);
+
+        // The generated records are spread over 1,000 partition keys
+        benchmark(partitionedSweepReconciler, "Partitioned Sweep", batch1, batch2, variance);
+        benchmark(aggregateReconciler, "Aggregate Matching", batch1, batch2, variance);
+        benchmark(adaptiveReconciler, "Adaptive", batch1, batch2, variance);
+
+        // Phase timings, candidate windows and claim retries of the instrumented engines
+        for (Meter meter : meters.getMeters()) {
+            System.out.println(meter.getId().getName() + " " + meter.getId().getTags() + " " + meter.measure());
+        }
     }
 }
\ No newline at end of file